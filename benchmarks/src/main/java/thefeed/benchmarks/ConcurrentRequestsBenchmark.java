@@ -0,0 +1,136 @@
+package thefeed.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import thefeed.FeedStore;
+import thefeed.FollowSet;
+import thefeed.LongArrayEpoch;
+import thefeed.QueryExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10k timeline requests in flight at once, each blocking for some I/O before its scan. "query" runs them
+ * on a QueryExecutor, virtual threads over a scan pool of one thread per core when the JVM has them, and
+ * "cached" the way Calibrate does, a fresh cached pool with every request scanning on its own thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2G", "-Xmx2G"})
+@OperationsPerInvocation(ConcurrentRequestsBenchmark.REQUESTS)
+public class ConcurrentRequestsBenchmark {
+
+  static final int REQUESTS = 10000;
+  private static final int RANGE = 100000;
+  private static final int USERS = 100;
+
+  @Param({"query", "cached"})
+  public String executor;
+
+  @Param({"0", "1000"})
+  public int ioMicros;
+
+  @Param({"1000000"})
+  public int entries;
+
+  @Param({"20"})
+  public int limit;
+
+  private FeedStore store;
+  private FollowSet[] follows;
+  private QueryExecutor queries;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random r = new Random(0);
+    store = new FeedStore(LongArrayEpoch.ALLOCATOR, 6000);
+    for (int i = 0; i < entries; i++) {
+      store.append(r.nextInt(RANGE), i);
+    }
+    follows = new FollowSet[USERS];
+    for (int k = 0; k < USERS; k++) {
+      follows[k] = Sets.create("FastIDSet2", Sets.userids(r, 100, RANGE));
+    }
+    if (executor.equals("query")) {
+      queries = new QueryExecutor(store);
+      System.out.println("Virtual threads: " + queries.isVirtual());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    if (queries != null) {
+      queries.shutdown(1, TimeUnit.MINUTES);
+    }
+  }
+
+  @Benchmark
+  public long requests() throws Exception {
+    List<Future<long[]>> timelines = new ArrayList<Future<long[]>>(REQUESTS);
+    ExecutorService cached = null;
+    if (queries == null) {
+      cached = Executors.newCachedThreadPool();
+    }
+    for (int i = 0; i < REQUESTS; i++) {
+      final FollowSet user = follows[i % USERS];
+      if (cached == null) {
+        timelines.add(queries.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            io();
+            return queries.scan(new Callable<long[]>() {
+              @Override
+              public long[] call() {
+                return store.timeline(user, limit);
+              }
+            });
+          }
+        }));
+      } else {
+        timelines.add(cached.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            io();
+            return store.timeline(user, limit);
+          }
+        }));
+      }
+    }
+    long postids = 0;
+    for (Future<long[]> timeline : timelines) {
+      postids += timeline.get().length;
+    }
+    if (cached != null) {
+      cached.shutdown();
+    }
+    return postids;
+  }
+
+  private void io() throws InterruptedException {
+    if (ioMicros > 0) {
+      TimeUnit.MICROSECONDS.sleep(ioMicros);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package thefeed.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import thefeed.ColumnarEpoch;
+import thefeed.EpochAllocator;
+import thefeed.EpochDirectory;
+import thefeed.FeedStore;
+import thefeed.FollowSet;
+import thefeed.LongArrayEpoch;
+import thefeed.LongBufferEpoch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full scan of the feed in each layout, from the object per entry lists the project started with to the
+ * epochs of the FeedStore. The state is shared so running with more threads (-t) measures concurrent scans
+ * of the same feed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2G", "-Xmx2G"})
+public class FeedLayoutBenchmark {
+
+  private static final int EPOCH = 6000;
+  private static final int BYTES_PER_ENTRY = 16;
+
+  @Param({"LinkedList", "LinkedArrays", "DirectBuffers", "LongArrays", "LongBuffers", "Columns", "Mapped"})
+  public String layout;
+
+  @Param({"1000000"})
+  public int entries;
+
+  @Param({"100", "1000", "10000"})
+  public int followees;
+
+  @Param({"0.01", "0.1"})
+  public double hitRate;
+
+  private FollowSet follows;
+  private List<Entry> list;
+  private Block<List<Entry>> arrays;
+  private Block<ByteBuffer> buffers;
+  private FeedStore store;
+  private File dir;
+
+  static class Entry {
+    final long userid;
+    final long postid;
+
+    Entry(long userid, long postid) {
+      this.userid = userid;
+      this.postid = postid;
+    }
+  }
+
+  static class Block<T> {
+    final T value;
+    final Block<T> next;
+
+    Block(T value, Block<T> next) {
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    Random r = new Random(0);
+    int range = Math.max(100000, followees * 10);
+    long[] userids = Sets.userids(r, followees, range);
+    follows = Sets.create("FastIDSet2", userids);
+    long[] feed = Sets.probes(r, userids, range, hitRate, entries);
+    if (layout.equals("LinkedList")) {
+      list = new LinkedList<Entry>();
+      for (int i = 0; i < entries; i++) {
+        list.add(0, new Entry(feed[i], i));
+      }
+    } else if (layout.equals("LinkedArrays")) {
+      for (int i = 0; i < entries; i += EPOCH) {
+        List<Entry> block = new ArrayList<Entry>(EPOCH);
+        for (int j = i; j < Math.min(entries, i + EPOCH); j++) {
+          block.add(new Entry(feed[j], j));
+        }
+        arrays = new Block<List<Entry>>(block, arrays);
+      }
+    } else if (layout.equals("DirectBuffers")) {
+      for (int i = 0; i < entries; i += EPOCH) {
+        ByteBuffer block = ByteBuffer.allocateDirect(EPOCH * BYTES_PER_ENTRY);
+        for (int j = i; j < Math.min(entries, i + EPOCH); j++) {
+          block.putLong(feed[j]).putLong(j);
+        }
+        block.flip();
+        buffers = new Block<ByteBuffer>(block, buffers);
+      }
+    } else {
+      EpochAllocator allocator;
+      if (layout.equals("LongArrays")) {
+        allocator = LongArrayEpoch.ALLOCATOR;
+      } else if (layout.equals("LongBuffers")) {
+        allocator = LongBufferEpoch.DIRECT;
+      } else if (layout.equals("Columns")) {
+        allocator = ColumnarEpoch.ALLOCATOR;
+      } else if (layout.equals("Mapped")) {
+        dir = File.createTempFile("epochs", "");
+        dir.delete();
+        allocator = new EpochDirectory(dir);
+      } else {
+        throw new IllegalArgumentException("Unknown layout: " + layout);
+      }
+      store = new FeedStore(allocator, EPOCH);
+      for (int i = 0; i < entries; i++) {
+        store.append(feed[i], i);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (dir != null) {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Benchmark
+  public int scan() {
+    FollowSet follows = this.follows;
+    int hits = 0;
+    if (list != null) {
+      for (Entry entry : list) {
+        if (follows.contains(entry.userid)) {
+          hits++;
+        }
+      }
+    } else if (arrays != null) {
+      for (Block<List<Entry>> block = arrays; block != null; block = block.next) {
+        for (Entry entry : block.value) {
+          if (follows.contains(entry.userid)) {
+            hits++;
+          }
+        }
+      }
+    } else if (buffers != null) {
+      for (Block<ByteBuffer> block = buffers; block != null; block = block.next) {
+        ByteBuffer buffer = block.value;
+        for (int i = buffer.limit() - BYTES_PER_ENTRY; i >= 0; i -= BYTES_PER_ENTRY) {
+          if (follows.contains(buffer.getLong(i))) {
+            hits++;
+          }
+        }
+      }
+    } else {
+      hits = store.scan(follows, Integer.MAX_VALUE);
+    }
+    return hits;
+  }
+}
@@ -0,0 +1,68 @@
+package thefeed.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import thefeed.FollowSet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups against every follow set implementation by number of followees and the fraction of lookups that
+ * hit, the inner loop of every scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FollowSetBenchmark {
+
+  private static final int PROBES = 1 << 16;
+
+  @Param({"FastIDSet", "FastIDSet2", "PerfectHashSet", "BlockedHashSet", "BitmapSet", "RobinHoodSet",
+          "SortedArraySet", "CopyOnWriteFollowSet", "FollowSetFactory"})
+  public String set;
+
+  @Param({"10", "1000", "10000", "100000"})
+  public int followees;
+
+  @Param({"0.01", "0.1", "0.5"})
+  public double hitRate;
+
+  private FollowSet follows;
+  private long[] probes;
+
+  @Setup
+  public void setup() {
+    Random r = new Random(0);
+    // Spread over ten times as many userids as are followed
+    long[] userids = Sets.userids(r, followees, followees * 10);
+    follows = Sets.create(set, userids);
+    probes = Sets.probes(r, userids, followees * 10, hitRate, PROBES);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int contains() {
+    FollowSet follows = this.follows;
+    int hits = 0;
+    for (long probe : probes) {
+      if (follows.contains(probe)) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+}
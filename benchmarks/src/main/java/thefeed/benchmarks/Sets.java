@@ -0,0 +1,92 @@
+package thefeed.benchmarks;
+
+import thefeed.BitmapSet;
+import thefeed.BlockedHashSet;
+import thefeed.CopyOnWriteFollowSet;
+import thefeed.FollowSet;
+import thefeed.FollowSetFactory;
+import thefeed.PerfectHashSet;
+import thefeed.RobinHoodSet;
+import thefeed.SortedArraySet;
+import thefeed.mahout.FastIDSet;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+/**
+ * Builds the follow sets and workloads shared by the benchmarks.
+ */
+final class Sets {
+
+  private Sets() {
+  }
+
+  /**
+   * @return count distinct userids below range
+   */
+  static long[] userids(Random r, int count, int range) {
+    FastIDSet2 distinct = new FastIDSet2(count);
+    while (distinct.size() < count) {
+      distinct.add(r.nextInt(range));
+    }
+    return distinct.toArray();
+  }
+
+  /**
+   * @return userids below range of which about hitRate are followed
+   */
+  static long[] probes(Random r, long[] followed, int range, double hitRate, int count) {
+    FastIDSet2 set = new FastIDSet2(followed.length);
+    for (long userid : followed) {
+      set.add(userid);
+    }
+    long[] probes = new long[count];
+    for (int i = 0; i < count; i++) {
+      if (r.nextDouble() < hitRate) {
+        probes[i] = followed[r.nextInt(followed.length)];
+      } else {
+        long userid;
+        do {
+          userid = r.nextInt(range);
+        } while (set.contains(userid));
+        probes[i] = userid;
+      }
+    }
+    return probes;
+  }
+
+  static FollowSet create(String name, long[] userids) {
+    if (name.equals("SortedArraySet")) {
+      return new SortedArraySet(userids);
+    } else if (name.equals("FollowSetFactory")) {
+      return FollowSetFactory.DEFAULT.create(userids);
+    } else if (name.equals("CopyOnWriteFollowSet")) {
+      CopyOnWriteFollowSet set = new CopyOnWriteFollowSet();
+      set.addAll(userids);
+      return set;
+    }
+    FollowSet set;
+    if (name.equals("FastIDSet")) {
+      set = new FastIDSet(userids.length);
+    } else if (name.equals("FastIDSet2")) {
+      set = new FastIDSet2(userids.length);
+    } else if (name.equals("PerfectHashSet")) {
+      set = new PerfectHashSet(userids.length);
+    } else if (name.equals("BlockedHashSet")) {
+      set = new BlockedHashSet(userids.length);
+    } else if (name.equals("BitmapSet")) {
+      set = new BitmapSet();
+    } else if (name.equals("RobinHoodSet")) {
+      set = new RobinHoodSet(userids.length);
+    } else {
+      throw new IllegalArgumentException("Unknown follow set: " + name);
+    }
+    for (long userid : userids) {
+      set.add(userid);
+    }
+    if (set instanceof PerfectHashSet) {
+      ((PerfectHashSet) set).set();
+    }
+    return set;
+  }
+}
@@ -0,0 +1,37 @@
+package thefeed.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks matching the given regular expression, or all of them, with 1, 2, 4 and so on threads
+ * up to and including the number of cores and writes the results as JSON to results/threads-N.json so runs can be
+ * compared across releases.
+ */
+public class ThreadSweep {
+
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : ".*";
+    File results = new File("results");
+    results.mkdirs();
+    int cores = Runtime.getRuntime().availableProcessors();
+    // Doubling, but ending on the core count even when it isn't a power of two
+    for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+      Options options = new OptionsBuilder()
+              .include(include)
+              .threads(threads)
+              .resultFormat(ResultFormatType.JSON)
+              .result(new File(results, "threads-" + threads + ".json").getPath())
+              .build();
+      new Runner(options).run();
+      if (threads == cores) {
+        break;
+      }
+    }
+  }
+}
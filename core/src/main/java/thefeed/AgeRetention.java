@@ -0,0 +1,20 @@
+package thefeed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep the epochs that were sealed within a window of time, e.g. the last 24 hours of posts.
+ */
+public class AgeRetention implements RetentionPolicy {
+
+  private final long maxAge;
+
+  public AgeRetention(long maxAge, TimeUnit unit) {
+    this.maxAge = unit.toMillis(maxAge);
+  }
+
+  @Override
+  public boolean expire(Epoch oldest, int epochs, long now) {
+    return now - oldest.sealedAt() > maxAge;
+  }
+}
@@ -0,0 +1,315 @@
+package thefeed;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Postings list of every author's posts maintained alongside the epochs of a feed. For a user who follows a
+ * handful of accounts it is far cheaper to merge those authors' posts by recency than to scan the feed.
+ * <p/>
+ * Each posting records the sequence number of the entry in the feed so that merged timelines come out in
+ * exactly the order a scan would find them. Like the epochs there is a single writer and readers never lock.
+ * Expiring epochs only moves the horizon; each append then sweeps a couple of authors, dropping those with
+ * nothing left in the feed and compacting lists that are mostly expired, so the cost of expiry is spread
+ * over the appends instead of walking every author at once.
+ */
+public class AuthorIndex {
+
+  // Authors each append sweeps for expired postings
+  private static final int SWEEP = 2;
+
+  private volatile Authors authors = new Authors(16);
+  private volatile int size;
+  private volatile long horizon;
+  // The next slot of the table to sweep
+  private int sweep;
+
+  /**
+   * Called by the feed for each entry it appends.
+   */
+  void add(long userid, long sequence, long postid) {
+    if (userid == Authors.NULL || userid == Authors.REMOVED) {
+      // No follow set can hold the keys the hash tables reserve
+      return;
+    }
+    Authors authors = this.authors;
+    int slot = authors.find(userid);
+    Postings current = authors.values.get(slot);
+    if (current == null || current.isFull()) {
+      // Readers keep using the old list until they look it up again
+      Postings grown = new Postings(current, horizon);
+      if (current != null) {
+        authors.values.set(slot, grown);
+      } else if (authors.used + 1 > authors.capacity() * 3 / 4) {
+        authors = rehash(authors);
+        authors.insert(authors.find(userid), userid, grown);
+        size++;
+      } else {
+        authors.insert(slot, userid, grown);
+        size++;
+      }
+      current = grown;
+    }
+    current.add(sequence, postid);
+    sweep(authors);
+  }
+
+  /**
+   * Drop or compact the next few authors if their postings have expired.
+   */
+  private void sweep(Authors authors) {
+    long horizon = this.horizon;
+    for (int i = 0; i < SWEEP; i++) {
+      int slot = sweep++ & authors.mask;
+      Postings list = authors.values.get(slot);
+      // Only lists whose oldest posting has expired need a look
+      if (list != null && list.data[0] < horizon) {
+        int first = list.first(horizon);
+        if (first == list.size()) {
+          authors.remove(slot);
+          size--;
+        } else if (first * 2 >= list.size()) {
+          authors.values.set(slot, new Postings(list, horizon));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return a new table sized for the authors that still have postings, published to readers
+   */
+  private Authors rehash(Authors old) {
+    long horizon = this.horizon;
+    int live = 0;
+    for (int slot = 0; slot < old.capacity(); slot++) {
+      Postings list = old.values.get(slot);
+      if (list != null && list.first(horizon) < list.size()) {
+        live++;
+      }
+    }
+    int capacity = 16;
+    while (capacity * 3 / 8 < live + 1) {
+      capacity <<= 1;
+    }
+    Authors authors = new Authors(capacity);
+    for (int slot = 0; slot < old.capacity(); slot++) {
+      Postings list = old.values.get(slot);
+      if (list != null) {
+        int first = list.first(horizon);
+        if (first < list.size()) {
+          long userid = old.keys.get(slot);
+          if (first * 2 >= list.size()) {
+            list = new Postings(list, horizon);
+          }
+          authors.insert(authors.find(userid), userid, list);
+        }
+      }
+    }
+    size = live;
+    this.authors = authors;
+    return authors;
+  }
+
+  /**
+   * Called by the feed when epochs expire. Postings before the horizon are ignored from now on and are
+   * dropped as later appends sweep their authors.
+   *
+   * @param horizon the sequence number of the oldest entry still in the feed
+   */
+  void expire(long horizon) {
+    this.horizon = horizon;
+  }
+
+  /**
+   * @return the number of authors in the index, which includes those whose posts have all expired until
+   * the appends sweep them
+   */
+  public int authors() {
+    return size;
+  }
+
+  /**
+   * @return the number of posts by the author still in the feed
+   */
+  public int count(long userid) {
+    Postings list = authors.get(userid);
+    return list == null ? 0 : list.size() - list.first(horizon);
+  }
+
+  /**
+   * Merge the posts of the followed users newest first.
+   *
+   * @param follows the userids to merge
+   * @param limit   the most postids to return
+   * @return the matching postids newest first, the same as a scan of the feed
+   */
+  public long[] timeline(FollowSet follows, int limit) {
+    long horizon = this.horizon;
+    PriorityQueue<Cursor> newest = new PriorityQueue<Cursor>(Math.max(follows.size(), 1), NEWEST_FIRST);
+    Authors authors = this.authors;
+    for (long userid : follows.toArray()) {
+      Postings list = authors.get(userid);
+      if (list != null) {
+        Cursor cursor = new Cursor(list.data, list.size(), list.first(horizon));
+        if (cursor.index >= cursor.first) {
+          newest.add(cursor);
+        }
+      }
+    }
+    ScanResults results = new ScanResults(Math.min(limit, 1024));
+    while (results.size() < limit && !newest.isEmpty()) {
+      Cursor cursor = newest.poll();
+      results.collect(0, cursor.postid());
+      if (--cursor.index >= cursor.first) {
+        newest.add(cursor);
+      }
+    }
+    return results.toArray();
+  }
+
+  private static final Comparator<Cursor> NEWEST_FIRST = new Comparator<Cursor>() {
+    @Override
+    public int compare(Cursor o1, Cursor o2) {
+      long s1 = o1.sequence();
+      long s2 = o2.sequence();
+      return s1 > s2 ? -1 : s1 == s2 ? 0 : 1;
+    }
+  };
+
+  private static class Cursor {
+    final long[] data;
+    final int first;
+    int index;
+
+    Cursor(long[] data, int size, int first) {
+      this.data = data;
+      this.first = first;
+      index = size - 1;
+    }
+
+    long sequence() {
+      return data[index * 2];
+    }
+
+    long postid() {
+      return data[index * 2 + 1];
+    }
+  }
+
+  /**
+   * Open addressing table from userid to postings, the same layout as FastIDSet2 so that a lookup needs no
+   * boxing. Only the writer changes it. A slot's key never changes once set other than to REMOVED, and its
+   * list is set before its key and cleared on removal, so a reader that finds a key gets that author's
+   * list or null. Removed slots are only reused by rehashing into a new table.
+   */
+  private static final class Authors {
+    static final long NULL = Long.MIN_VALUE;
+    static final long REMOVED = Long.MAX_VALUE;
+
+    final AtomicLongArray keys;
+    final AtomicReferenceArray<Postings> values;
+    final int mask;
+    // Slots holding a key or REMOVED
+    int used;
+
+    Authors(int capacity) {
+      long[] empty = new long[capacity];
+      Arrays.fill(empty, NULL);
+      keys = new AtomicLongArray(empty);
+      values = new AtomicReferenceArray<Postings>(capacity);
+      mask = capacity - 1;
+    }
+
+    int capacity() {
+      return mask + 1;
+    }
+
+    /**
+     * @return the slot of the userid, or the empty slot it would go in
+     */
+    int find(long userid) {
+      int slot = (int) userid & mask;
+      long key = keys.get(slot);
+      while (key != userid && key != NULL) {
+        slot = slot + 1 & mask;
+        key = keys.get(slot);
+      }
+      return slot;
+    }
+
+    Postings get(long userid) {
+      return values.get(find(userid));
+    }
+
+    void insert(int slot, long userid, Postings list) {
+      values.set(slot, list);
+      keys.set(slot, userid);
+      used++;
+    }
+
+    void remove(int slot) {
+      keys.set(slot, REMOVED);
+      values.set(slot, null);
+    }
+  }
+
+  /**
+   * Fixed capacity list of [sequence, postid] pairs oldest first. When it fills up it is replaced by a
+   * larger copy without the expired postings so entries never move within a list readers might hold.
+   */
+  private static class Postings {
+    private static final AtomicIntegerFieldUpdater<Postings> SIZE =
+            AtomicIntegerFieldUpdater.newUpdater(Postings.class, "size");
+
+    final long[] data;
+    volatile int size;
+
+    Postings(Postings previous, long horizon) {
+      if (previous == null) {
+        data = new long[8];
+      } else {
+        int first = previous.first(horizon);
+        int live = previous.size - first;
+        data = new long[Math.max(8, live * 4)];
+        System.arraycopy(previous.data, first * 2, data, 0, live * 2);
+        size = live;
+      }
+    }
+
+    boolean isFull() {
+      return size * 2 == data.length;
+    }
+
+    void add(long sequence, long postid) {
+      int index = size;
+      data[index * 2] = sequence;
+      data[index * 2 + 1] = postid;
+      SIZE.lazySet(this, index + 1);
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * @return the index of the first posting at or after the horizon
+     */
+    int first(long horizon) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (data[mid * 2] < horizon) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package thefeed;
+
+import thefeed.mahout.FastIDLongMap;
+
+/**
+ * Scans the feed once for many follow sets at a time. The follow sets are combined into a map from each
+ * followee to a bitmask of the sets that follow them, so each entry costs one lookup however many sets
+ * there are and the epochs are streamed from memory once instead of once per timeline. Each set stops
+ * collecting once it has its limit of matches and the scan stops once they all have.
+ * <p/>
+ * The combined map is built once and can be reused for any number of scans on any number of threads.
+ */
+public class BatchScan {
+
+  // Userids are copied out of the epoch this many at a time
+  private static final int CHUNK = 256;
+
+  private final FollowSet[] follows;
+  // Followee to their row of masks
+  private final FastIDLongMap rows;
+  // Row major, bit k of a row is set if follows[k] contains the followee
+  private final long[] masks;
+  private final int words;
+
+  public BatchScan(FollowSet... follows) {
+    if (follows.length == 0) {
+      throw new IllegalArgumentException("No follow sets");
+    }
+    this.follows = follows.clone();
+    words = (follows.length + 63) >>> 6;
+    int followees = 0;
+    for (FollowSet set : follows) {
+      followees += set.size();
+    }
+    rows = new FastIDLongMap(followees, -1);
+    long[] masks = new long[Math.max(followees, 1) * words];
+    int size = 0;
+    for (int k = 0; k < follows.length; k++) {
+      for (long userid : follows[k].toArray()) {
+        long row = rows.get(userid);
+        if (row < 0) {
+          row = size++;
+          rows.put(userid, row);
+        }
+        masks[(int) row * words + (k >>> 6)] |= 1L << k;
+      }
+    }
+    this.masks = masks;
+  }
+
+  /**
+   * @return the number of follow sets
+   */
+  public int size() {
+    return follows.length;
+  }
+
+  /**
+   * Count the matches of every follow set.
+   *
+   * @param store the feed to scan
+   * @param limit stop counting a set's matches once it has this many
+   * @return the number of matches of each set, in the order they were given
+   */
+  public int[] scan(FeedStore store, int limit) {
+    return scan(store, limit, null);
+  }
+
+  /**
+   * The newest postids from the users each set follows.
+   *
+   * @see FeedStore#timeline(FollowSet, int)
+   */
+  public long[][] timelines(FeedStore store, int limit) {
+    ScanResults[] results = new ScanResults[follows.length];
+    for (int k = 0; k < results.length; k++) {
+      results[k] = new ScanResults(Math.min(limit, 1024));
+    }
+    scan(store, limit, results);
+    long[][] timelines = new long[results.length][];
+    for (int k = 0; k < results.length; k++) {
+      timelines[k] = results[k].toArray();
+    }
+    return timelines;
+  }
+
+  /**
+   * Scan the feed newest first and pass each set's matching entries to its collector.
+   *
+   * @param store      the feed to scan
+   * @param limit      stop collecting a set's matches once it has this many
+   * @param collectors one per follow set in the same order, or null to only count
+   * @return the number of matches of each set
+   */
+  public int[] scan(FeedStore store, int limit, ScanCollector[] collectors) {
+    if (collectors != null && collectors.length != follows.length) {
+      throw new IllegalArgumentException(collectors.length + " collectors for " + follows.length + " follow sets");
+    }
+    int[] hits = new int[follows.length];
+    if (limit <= 0) {
+      return hits;
+    }
+    EpochFilter[] filters = new EpochFilter[follows.length];
+    for (int k = 0; k < follows.length; k++) {
+      filters[k] = EpochFilter.of(follows[k], store.epochSize());
+    }
+    // Bit k is set while follows[k] still needs matches
+    long[] active = new long[words];
+    for (int k = 0; k < follows.length; k++) {
+      active[k >>> 6] |= 1L << k;
+    }
+    int remaining = follows.length;
+    FastIDLongMap rows = this.rows;
+    long[] masks = this.masks;
+    int words = this.words;
+    long[] userids = new long[CHUNK];
+    int ticket = store.enter();
+    try {
+      for (Epoch epoch = store.head(); epoch != null && remaining > 0; epoch = epoch.next()) {
+        if (skip(epoch, filters, active)) {
+          continue;
+        }
+        for (int end = epoch.size(); end > 0 && remaining > 0; end -= CHUNK) {
+          int base = Math.max(end - CHUNK, 0);
+          epoch.userids(base, userids, end - base);
+          for (int i = end - base - 1; i >= 0; i--) {
+            long userid = userids[i];
+            int row = (int) rows.get(userid);
+            if (row < 0) {
+              continue;
+            }
+            for (int w = 0; w < words; w++) {
+              long matched = masks[row * words + w] & active[w];
+              while (matched != 0) {
+                int k = (w << 6) + Long.numberOfTrailingZeros(matched);
+                matched &= matched - 1;
+                if (collectors != null) {
+                  collectors[k].collect(userid, epoch.postid(base + i));
+                }
+                if (++hits[k] == limit) {
+                  active[w] &= ~(1L << k);
+                  remaining--;
+                }
+              }
+            }
+            if (remaining == 0) {
+              break;
+            }
+          }
+        }
+      }
+    } finally {
+      store.exit(ticket);
+    }
+    return hits;
+  }
+
+  /**
+   * @return true if the summary of the epoch rules out every set still collecting
+   */
+  private boolean skip(Epoch epoch, EpochFilter[] filters, long[] active) {
+    for (int w = 0; w < active.length; w++) {
+      for (long bits = active[w]; bits != 0; bits &= bits - 1) {
+        if (!filters[(w << 6) + Long.numberOfTrailingZeros(bits)].skip(epoch)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
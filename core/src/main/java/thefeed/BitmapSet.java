@@ -0,0 +1,158 @@
+package thefeed;
+
+import thefeed.mahout.FastIDMap;
+
+import java.util.Arrays;
+
+/**
+ * Follow set for dense userids, one bit per userid. The bits are kept in chunks of 64k userids that are
+ * only allocated once something in them is followed, roaring style. The chunks around the followees are
+ * held in an array indexed by the userid's offset from the first, so for the dense range contains is a
+ * shift, a subtraction and a mask with no probing. A chunk that would stretch the array to more than
+ * SPREAD slots for each chunk in it goes in a hash map instead, so a few followees far from the rest cost
+ * 8KB each however far apart they are and only lookups outside the array probe.
+ */
+public class BitmapSet implements FollowSet {
+
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_WORDS = 1 << CHUNK_BITS - 6;
+  // Empty slots in the array are a reference each, this many cost about as much as a chunk
+  private static final int SPREAD = 1024;
+  private static final long[][] EMPTY = new long[0][];
+
+  private long[][] dense = EMPTY;
+  // Chunk number, userid >> CHUNK_BITS, of dense[0]
+  private long base;
+  private int denseChunks;
+  // Chunks outside the dense range, by chunk number
+  private final FastIDMap<long[]> outliers = new FastIDMap<long[]>();
+  private int numEntries;
+
+  @Override
+  public boolean contains(long userid) {
+    long chunk = (userid >> CHUNK_BITS) - base;
+    long[][] dense = this.dense;
+    long[] words;
+    if (chunk >= 0 && chunk < dense.length) {
+      words = dense[(int) chunk];
+    } else if (outliers.isEmpty()) {
+      return false;
+    } else {
+      words = outliers.get(userid >> CHUNK_BITS);
+    }
+    return words != null && (words[(int) userid >>> 6 & CHUNK_WORDS - 1] & 1L << userid) != 0;
+  }
+
+  @Override
+  public boolean add(long userid) {
+    if (userid == Long.MIN_VALUE || userid == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Reserved userid: " + userid);
+    }
+    long[] words = chunk(userid >> CHUNK_BITS);
+    int word = (int) userid >>> 6 & CHUNK_WORDS - 1;
+    long bit = 1L << userid;
+    if ((words[word] & bit) != 0) {
+      return false;
+    }
+    words[word] |= bit;
+    numEntries++;
+    return true;
+  }
+
+  /**
+   * @return the words of the chunk, allocating it if it is new
+   */
+  private long[] chunk(long chunk) {
+    long index = chunk - base;
+    if (index >= 0 && index < dense.length) {
+      long[] words = dense[(int) index];
+      if (words == null) {
+        words = dense[(int) index] = new long[CHUNK_WORDS];
+        denseChunks++;
+      }
+      return words;
+    }
+    long[] words = outliers.get(chunk);
+    if (words != null) {
+      return words;
+    }
+    words = new long[CHUNK_WORDS];
+    if (denseChunks == 0) {
+      base = chunk;
+      dense = new long[][]{words};
+      denseChunks = 1;
+      return words;
+    }
+    long first = Math.min(base, chunk);
+    long length = Math.max(base + dense.length, chunk + 1) - first;
+    if (length > Math.min((long) SPREAD * (denseChunks + 1), Integer.MAX_VALUE - 8)) {
+      outliers.put(chunk, words);
+      return words;
+    }
+    long[][] grown = new long[(int) length][];
+    System.arraycopy(dense, 0, grown, (int) (base - first), dense.length);
+    grown[(int) (chunk - first)] = words;
+    dense = grown;
+    base = first;
+    denseChunks++;
+    // Outliers the dense range now covers move into it
+    if (!outliers.isEmpty()) {
+      for (long outlier : outliers.keys()) {
+        if (outlier >= first && outlier < first + length) {
+          dense[(int) (outlier - first)] = outliers.remove(outlier);
+          denseChunks++;
+        }
+      }
+    }
+    return words;
+  }
+
+  @Override
+  public void report() {
+  }
+
+  /**
+   * There is no hash table for the userids themselves so this is the same as toArray.
+   */
+  @Override
+  public long[] getKeys() {
+    return toArray();
+  }
+
+  @Override
+  public int size() {
+    return numEntries;
+  }
+
+  /**
+   * @return the userids in ascending order
+   */
+  @Override
+  public long[] toArray() {
+    long[] chunks = new long[denseChunks + outliers.size()];
+    int count = 0;
+    for (int i = 0; i < dense.length; i++) {
+      if (dense[i] != null) {
+        chunks[count++] = base + i;
+      }
+    }
+    for (long outlier : outliers.keys()) {
+      chunks[count++] = outlier;
+    }
+    Arrays.sort(chunks);
+    long[] result = new long[numEntries];
+    int position = 0;
+    for (long chunk : chunks) {
+      long index = chunk - base;
+      long[] words = index >= 0 && index < dense.length ? dense[(int) index] : outliers.get(chunk);
+      for (int word = 0; word < words.length; word++) {
+        long bits = words[word];
+        while (bits != 0) {
+          result[position++] = (chunk << CHUNK_BITS) + (word << 6) + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,188 @@
+package thefeed;
+
+import java.util.Arrays;
+
+/**
+ * Follow set laid out as buckets of 8 keys, the 64 bytes of a typical cache line, so that a probe compares a
+ * whole bucket at once instead of chasing slots around the table. Every key has two candidate buckets and is
+ * placed cuckoo style, kicking other keys to their alternate bucket if both are full.
+ * <p/>
+ * Keys are never removed so a bucket only ever fills up: a key is only placed in its second bucket when its
+ * first is full, and it stays full. A lookup that finds a free slot in the first bucket can stop there,
+ * which at the default load is nearly always, so contains normally touches a single bucket and never more
+ * than two. Java doesn't align arrays to cache lines so a bucket may straddle two adjacent lines.
+ */
+public class BlockedHashSet implements FollowSet {
+
+  private static final int BUCKET = 8;
+  private static final int SHIFT = 3;
+  private static final long NULL = Long.MIN_VALUE;
+  // Keys per slot before the table grows, lower keeps more first buckets free
+  private static final double LOAD_FACTOR = 0.5;
+  private static final int MAX_KICKS = 500;
+
+  private long[] keys;
+  private int mask;
+  private int numEntries;
+  private int seed = 1;
+
+  public BlockedHashSet(int size) {
+    allocate(buckets(size));
+  }
+
+  private static int buckets(int size) {
+    int buckets = 1;
+    while (buckets * BUCKET * LOAD_FACTOR < size) {
+      buckets <<= 1;
+    }
+    return buckets;
+  }
+
+  private void allocate(int buckets) {
+    keys = new long[buckets * BUCKET];
+    Arrays.fill(keys, NULL);
+    mask = buckets - 1;
+  }
+
+  @Override
+  public boolean contains(long userid) {
+    if (userid == NULL) {
+      // Would match the first empty slot
+      return false;
+    }
+    long[] keys = this.keys;
+    long hash = mix(userid);
+    int base = ((int) hash & mask) << SHIFT;
+    for (int i = base; i < base + BUCKET; i++) {
+      if (keys[i] == userid) {
+        return true;
+      }
+    }
+    if (keys[base + BUCKET - 1] == NULL) {
+      return false;
+    }
+    base = ((int) (hash >>> 32) & mask) << SHIFT;
+    for (int i = base; i < base + BUCKET; i++) {
+      if (keys[i] == userid) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean add(long userid) {
+    if (userid == NULL || userid == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Reserved userid: " + userid);
+    }
+    if (contains(userid)) {
+      return false;
+    }
+    if (numEntries + 1 > keys.length * LOAD_FACTOR) {
+      rehash((mask + 1) * 2);
+    }
+    while (!place(userid)) {
+      rehash((mask + 1) * 2);
+    }
+    numEntries++;
+    return true;
+  }
+
+  /**
+   * @return false if the key couldn't be placed, the table is then unchanged
+   */
+  private boolean place(long userid) {
+    long hash = mix(userid);
+    int first = (int) hash & mask;
+    if (insert(first, userid) || insert((int) (hash >>> 32) & mask, userid)) {
+      return true;
+    }
+    // Both are full, kick keys along to their other buckets, remembering the path so it can be undone
+    int[] path = new int[MAX_KICKS];
+    int bucket = first;
+    long key = userid;
+    for (int kick = 0; kick < MAX_KICKS; kick++) {
+      seed = seed * 1103515245 + 12345;
+      int slot = (bucket << SHIFT) + ((seed >>> 16) & (BUCKET - 1));
+      long victim = keys[slot];
+      keys[slot] = key;
+      path[kick] = slot;
+      long victimHash = mix(victim);
+      int primary = (int) victimHash & mask;
+      bucket = primary == bucket ? (int) (victimHash >>> 32) & mask : primary;
+      key = victim;
+      if (insert(bucket, key)) {
+        return true;
+      }
+    }
+    for (int kick = MAX_KICKS - 1; kick >= 0; kick--) {
+      long displaced = keys[path[kick]];
+      keys[path[kick]] = key;
+      key = displaced;
+    }
+    return false;
+  }
+
+  private boolean insert(int bucket, long userid) {
+    int base = bucket << SHIFT;
+    for (int i = base; i < base + BUCKET; i++) {
+      if (keys[i] == NULL) {
+        keys[i] = userid;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void rehash(int buckets) {
+    long[] oldKeys = keys;
+    search:
+    for (; ; buckets *= 2) {
+      allocate(buckets);
+      for (long key : oldKeys) {
+        if (key != NULL && !place(key)) {
+          continue search;
+        }
+      }
+      return;
+    }
+  }
+
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb93fe53cdbd3L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  @Override
+  public void report() {
+  }
+
+  /**
+   * @return the table, bucket by bucket with empty slots set to Long.MIN_VALUE
+   */
+  @Override
+  public long[] getKeys() {
+    return keys;
+  }
+
+  @Override
+  public int size() {
+    return numEntries;
+  }
+
+  @Override
+  public long[] toArray() {
+    long[] result = new long[numEntries];
+    int position = 0;
+    for (long key : keys) {
+      if (key != NULL) {
+        result[position++] = key;
+      }
+    }
+    return result;
+  }
+}
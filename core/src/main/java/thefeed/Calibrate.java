@@ -0,0 +1,247 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet;
+import thefeed.mahout.FastIDSet2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calibrate a platform to see how quickly it can scan entries. Run with -server and 2G of memory.
+ * Options: "2" to use FastIDSet2, "perfect" to use the minimal perfect hash in PerfectHashSet,
+ * "blocked" to use the cache line buckets of BlockedHashSet, "bitmap" to use a BitmapSet,
+ * "robinhood" to use the bounded probes of RobinHoodSet, "sorted" to intersect a SortedArraySet with each
+ * epoch's dictionary of userids, "adaptive" to let a calibrated FollowSetFactory
+ * choose, "direct" to keep the epochs in direct memory, "columnar" to split userids from postids,
+ * "mapped" and a directory to keep them in memory mapped files and "lanes" to scan with the
+ * LaneScanEngine. "followees" and a count changes the number of followees, "collect" gathers the
+ * matching postids into a buffer per thread and "atomic" counts every hit on one shared counter.
+ * "batch" instead reports how many timelines a second BatchScan computes for 1, 8 and 64 users at a time
+ * and "shared" how many a SharedScanScheduler serves to 64 clients each waiting on their own requests.
+ * Run with -Dthefeed.metrics=true to print the ScanMetrics after each round and publish them over JMX.
+ * <p/>
+ * User: sam
+ * Date: 5/22/11
+ * Time: 2:00 PM
+ */
+public class Calibrate {
+
+  private static final int FOLLOWEES = 1000;
+
+  public static void main(String[] args) throws ExecutionException, InterruptedException {
+    Random r = new Random();
+    FollowSet comparisons = new FastIDSet(10000);
+    EpochAllocator allocator = LongArrayEpoch.ALLOCATOR;
+    ScanEngine engine = ScanEngine.SCALAR;
+    File dir = null;
+    int followees = FOLLOWEES;
+    boolean collect = false;
+    boolean atomic = false;
+    boolean adaptive = false;
+    boolean batch = false;
+    boolean coalesce = false;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (arg.equals("2")) {
+        comparisons = new FastIDSet2(10000);
+      } else if (arg.equals("perfect")) {
+        comparisons = new PerfectHashSet(10000);
+      } else if (arg.equals("blocked")) {
+        comparisons = new BlockedHashSet(10000);
+      } else if (arg.equals("bitmap")) {
+        comparisons = new BitmapSet();
+      } else if (arg.equals("robinhood")) {
+        comparisons = new RobinHoodSet(10000);
+      } else if (arg.equals("sorted")) {
+        comparisons = new SortedArraySet();
+        engine = new DictionaryScanEngine();
+      } else if (arg.equals("adaptive")) {
+        adaptive = true;
+      } else if (arg.equals("direct")) {
+        allocator = LongBufferEpoch.DIRECT;
+      } else if (arg.equals("columnar")) {
+        allocator = ColumnarEpoch.ALLOCATOR;
+      } else if (arg.equals("mapped") && i + 1 < args.length) {
+        dir = new File(args[++i]);
+      } else if (arg.equals("lanes")) {
+        engine = new LaneScanEngine();
+      } else if (arg.equals("followees") && i + 1 < args.length) {
+        followees = Integer.parseInt(args[++i]);
+      } else if (arg.equals("collect")) {
+        collect = true;
+      } else if (arg.equals("atomic")) {
+        atomic = true;
+      } else if (arg.equals("batch")) {
+        batch = true;
+      } else if (arg.equals("shared")) {
+        coalesce = true;
+      } else {
+        throw new IllegalArgumentException("Unknown option: " + arg);
+      }
+    }
+    for (int i = 0; i < followees; i++) {
+      comparisons.add((long) r.nextInt(RANGE));
+    }
+    if (adaptive) {
+      FollowSetFactory factory = FollowSetFactory.calibrate();
+      System.out.println(factory);
+      comparisons = factory.create(comparisons.toArray());
+    }
+    if (comparisons instanceof PerfectHashSet) {
+      long start = System.currentTimeMillis();
+      ((PerfectHashSet) comparisons).set();
+      System.out.println("Built perfect hash in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    FeedStore store;
+    if (dir != null) {
+      // Reuses whatever a previous run left in the directory
+      long start = System.currentTimeMillis();
+      store = new EpochDirectory(dir).open(TIMES / BLOCKS);
+      System.out.println("Opened " + store.size() + " entries in " + (System.currentTimeMillis() - start) + " ms");
+    } else {
+      store = new FeedStore(allocator, TIMES / BLOCKS);
+    }
+    for (long i = store.size(); i < TIMES; i++) {
+      store.append(r.nextInt(RANGE), i);
+    }
+    if (batch) {
+      batch(store, followees, r);
+      return;
+    }
+    if (coalesce) {
+      shared(store, followees, r);
+      return;
+    }
+    System.out.println(comparisons.getClass().getName());
+    System.out.println("SKIPPED " + store.skipped(comparisons) + " of " + store.epochs() + " epochs");
+    if (ScanMetrics.ENABLED) {
+      ScanMetrics.register();
+    }
+    System.out.println("CORES,TOTAL,PERCORE,HITS");
+    for (int cpus = 1; cpus <= Runtime.getRuntime().availableProcessors()*2; cpus++) {
+      ExecutorService es = Executors.newCachedThreadPool();
+      List<Callable<Integer>> runs = new ArrayList<Callable<Integer>>();
+      final FeedStore finalStore = store;
+      final ScanEngine finalEngine = engine;
+      final boolean finalCollect = collect;
+      final boolean finalAtomic = atomic;
+      final AtomicInteger shared = new AtomicInteger(0);
+      for (int i = 0; i < cpus; i++) {
+        final FollowSet finalComparisons = comparisons;
+        runs.add(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            if (finalAtomic) {
+              // Every hit contends on the same counter, only here for comparison
+              return finalStore.scan(finalComparisons, Integer.MAX_VALUE, new ScanCollector() {
+                @Override
+                public void collect(long userid, long postid) {
+                  shared.incrementAndGet();
+                }
+              });
+            } else if (finalCollect) {
+              return finalStore.scan(finalComparisons, Integer.MAX_VALUE, new ScanResults());
+            }
+            return finalStore.scan(finalComparisons, Integer.MAX_VALUE, finalEngine);
+          }
+        });
+      }
+      long start = System.currentTimeMillis();
+      int hits = 0;
+      for (Future<Integer> run : es.invokeAll(runs)) {
+        hits += run.get();
+      }
+      long result = TIMES / (System.currentTimeMillis() - start);
+      es.shutdownNow();
+      System.out.println(cpus + "," + cpus * result + "," + result + "," + hits);
+      comparisons.report();
+      if (ScanMetrics.ENABLED) {
+        System.out.println(ScanMetrics.snapshot());
+      }
+    }
+  }
+
+  /**
+   * Time full batch scans of the store for 1, 8 and 64 random users, running each for a few seconds.
+   */
+  private static void batch(FeedStore store, int followees, Random r) {
+    System.out.println("USERS,TIMELINES/S,HITS");
+    for (int users : new int[]{1, 8, 64}) {
+      FollowSet[] follows = new FollowSet[users];
+      for (int k = 0; k < users; k++) {
+        follows[k] = new FastIDSet2(followees);
+        for (int i = 0; i < followees; i++) {
+          follows[k].add((long) r.nextInt(RANGE));
+        }
+      }
+      BatchScan scan = new BatchScan(follows);
+      long hits = 0;
+      int passes = 0;
+      long start = System.currentTimeMillis();
+      long elapsed;
+      do {
+        for (int count : scan.scan(store, Integer.MAX_VALUE)) {
+          hits += count;
+        }
+        passes++;
+      } while ((elapsed = System.currentTimeMillis() - start) < 3000);
+      System.out.println(users + "," + passes * users * 1000L / elapsed + "," + hits / passes);
+    }
+  }
+
+  /**
+   * Time 64 clients requesting full timelines through a SharedScanScheduler for a few seconds.
+   */
+  private static void shared(final FeedStore store, int followees, Random r)
+          throws InterruptedException, ExecutionException {
+    int clients = 64;
+    int cpus = Runtime.getRuntime().availableProcessors();
+    ExecutorService scans = Executors.newFixedThreadPool(cpus);
+    final SharedScanScheduler scheduler = new SharedScanScheduler(store, scans, cpus, 200,
+        TimeUnit.MICROSECONDS, clients);
+    ExecutorService es = Executors.newFixedThreadPool(clients);
+    final long end = System.currentTimeMillis() + 3000;
+    List<Callable<Integer>> runs = new ArrayList<Callable<Integer>>();
+    for (int k = 0; k < clients; k++) {
+      final FollowSet follows = new FastIDSet2(followees);
+      for (int i = 0; i < followees; i++) {
+        follows.add((long) r.nextInt(RANGE));
+      }
+      runs.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int timelines = 0;
+          while (System.currentTimeMillis() < end) {
+            scheduler.submit(follows, Integer.MAX_VALUE).get();
+            timelines++;
+          }
+          return timelines;
+        }
+      });
+    }
+    long start = System.currentTimeMillis();
+    int timelines = 0;
+    for (Future<Integer> run : es.invokeAll(runs)) {
+      timelines += run.get();
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    scheduler.close();
+    es.shutdownNow();
+    scans.shutdownNow();
+    System.out.println("CLIENTS,TIMELINES/S,SCANS");
+    System.out.println(clients + "," + timelines * 1000L / elapsed + "," + scheduler.batches());
+  }
+
+  private static int RANGE = 100000;
+  private static int BLOCKS = 5000;
+  private static int TIMES = 30000000;
+}
@@ -0,0 +1,97 @@
+package thefeed;
+
+/**
+ * Epoch that keeps userids and postids in separate heap columns. Scans only stream the userid column so
+ * each cache line holds twice as many candidates as the interleaved layout, and postids are only read for
+ * the entries that match.
+ */
+public class ColumnarEpoch extends Epoch {
+
+  public static final EpochAllocator ALLOCATOR = new EpochAllocator() {
+    @Override
+    public Epoch allocate(int capacity) {
+      return new ColumnarEpoch(capacity);
+    }
+
+    @Override
+    public void release(Epoch epoch) {
+      // Left to the garbage collector, use an EpochPool to reuse the arrays
+    }
+  };
+
+  private final long[] userids;
+  private final long[] postids;
+
+  public ColumnarEpoch(int capacity) {
+    super(capacity);
+    userids = new long[capacity];
+    postids = new long[capacity];
+  }
+
+  @Override
+  public long userid(int index) {
+    return userids[index];
+  }
+
+  @Override
+  public long postid(int index) {
+    return postids[index];
+  }
+
+  @Override
+  public void userids(int index, long[] into, int length) {
+    System.arraycopy(userids, index, into, 0, length);
+  }
+
+  @Override
+  protected void put(int index, long userid, long postid) {
+    userids[index] = userid;
+    postids[index] = postid;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit) {
+    long[] userids = this.userids;
+    int hits = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      if (follows.contains(userids[i])) {
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit, ScanCollector collector) {
+    long[] userids = this.userids;
+    int hits = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      long userid = userids[i];
+      if (follows.contains(userid)) {
+        collector.collect(userid, postids[i]);
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int from, int limit, ScanCollector collector) {
+    long[] userids = this.userids;
+    int hits = 0;
+    for (int i = from - 1; i >= 0; i--) {
+      long userid = userids[i];
+      if (follows.contains(userid)) {
+        collector.collect(userid, postids[i]);
+        if (++hits == limit) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,108 @@
+package thefeed;
+
+import java.util.Arrays;
+
+/**
+ * Follow set that can be changed while scans are using it. Every change builds a new set from the followees
+ * and publishes it with a single volatile write, so readers never lock and never see a set part way through
+ * a rehash. Follows and unfollows are rare next to lookups so copying the set on each one is cheap overall,
+ * and each copy gets whichever representation the factory picks for its new size.
+ * <p/>
+ * Each contains reads the latest snapshot so a long scan sees changes as they happen, give it
+ * {@link #snapshot()} instead for a scan that sees the followees as of when it started.
+ */
+public class CopyOnWriteFollowSet implements FollowSet {
+
+  private final FollowSetFactory factory;
+  private volatile FollowSet current;
+
+  public CopyOnWriteFollowSet() {
+    this(FollowSetFactory.DEFAULT);
+  }
+
+  public CopyOnWriteFollowSet(FollowSetFactory factory) {
+    this.factory = factory;
+    current = factory.create(new long[0]);
+  }
+
+  /**
+   * @return the followees as of now, the returned set never changes
+   */
+  public FollowSet snapshot() {
+    return current;
+  }
+
+  @Override
+  public boolean contains(long userid) {
+    return current.contains(userid);
+  }
+
+  @Override
+  public synchronized boolean add(long userid) {
+    return addAll(new long[]{userid});
+  }
+
+  /**
+   * Follow several users in one copy.
+   *
+   * @return true if any of them weren't already followed
+   */
+  public synchronized boolean addAll(long[] userids) {
+    FollowSet previous = current;
+    long[] followees = previous.toArray();
+    int size = followees.length;
+    followees = Arrays.copyOf(followees, size + userids.length);
+    for (long userid : userids) {
+      if (!previous.contains(userid)) {
+        followees[size++] = userid;
+      }
+    }
+    if (size == previous.size()) {
+      return false;
+    }
+    current = factory.create(Arrays.copyOf(followees, size));
+    return true;
+  }
+
+  /**
+   * Unfollow a user.
+   *
+   * @return false if they weren't followed
+   */
+  public synchronized boolean remove(long userid) {
+    FollowSet previous = current;
+    if (!previous.contains(userid)) {
+      return false;
+    }
+    long[] followees = previous.toArray();
+    long[] remaining = new long[followees.length - 1];
+    int size = 0;
+    for (long followee : followees) {
+      if (followee != userid) {
+        remaining[size++] = followee;
+      }
+    }
+    current = factory.create(remaining);
+    return true;
+  }
+
+  @Override
+  public void report() {
+    current.report();
+  }
+
+  @Override
+  public long[] getKeys() {
+    return current.getKeys();
+  }
+
+  @Override
+  public int size() {
+    return current.size();
+  }
+
+  @Override
+  public long[] toArray() {
+    return current.toArray();
+  }
+}
@@ -0,0 +1,53 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+/**
+ * Chart the latency of a timeline query answered by scanning the feed and by merging the author index as
+ * the number of followees grows, along with the plan the QueryPlanner picks. Run with -server and 2G of
+ * memory.
+ */
+public class Crossover {
+
+  private static final int LIMIT = 200;
+  private static final int QUERIES = 100;
+
+  public static void main(String[] args) {
+    Random r = new Random();
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, TIMES / BLOCKS, RetentionPolicy.FOREVER,
+            new AuthorIndex());
+    for (int i = 0; i < TIMES; i++) {
+      store.append(r.nextInt(RANGE), i);
+    }
+    QueryPlanner planner = new QueryPlanner(store);
+    System.out.println("FOLLOWEES,SCAN,MERGE,PLAN");
+    for (int followees = 1; followees <= RANGE / 10; followees *= 2) {
+      FollowSet comparisons = new FastIDSet2(followees);
+      while (comparisons.size() < followees) {
+        comparisons.add(r.nextInt(RANGE));
+      }
+      long scan = 0;
+      long merge = 0;
+      // Alternate so both plans see the same warmup
+      for (int i = 0; i < 2; i++) {
+        long start = System.nanoTime();
+        for (int j = 0; j < QUERIES; j++) {
+          store.timeline(comparisons, LIMIT);
+        }
+        scan = (System.nanoTime() - start) / QUERIES / 1000;
+        start = System.nanoTime();
+        for (int j = 0; j < QUERIES; j++) {
+          store.index().timeline(comparisons, LIMIT);
+        }
+        merge = (System.nanoTime() - start) / QUERIES / 1000;
+      }
+      System.out.println(followees + "," + scan + "," + merge + "," + planner.plan(comparisons, LIMIT));
+    }
+  }
+
+  private static int RANGE = 100000;
+  private static int BLOCKS = 2000;
+  private static int TIMES = 10000000;
+}
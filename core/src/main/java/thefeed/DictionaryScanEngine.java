@@ -0,0 +1,29 @@
+package thefeed;
+
+import java.util.BitSet;
+
+/**
+ * Scans a sealed epoch against a SortedArraySet by intersecting the follow set with the epoch's dictionary
+ * of distinct userids, galloping through the longer of the two sorted arrays. Only the number of matches is
+ * needed so it is the sum of the matching userids' counts and the entries themselves are never read. Open
+ * epochs and other follow sets are scanned with the scalar engine.
+ */
+public class DictionaryScanEngine implements ScanEngine {
+
+  @Override
+  public int scan(Epoch epoch, FollowSet follows, int limit) {
+    EpochDictionary dictionary;
+    if (!(follows instanceof SortedArraySet) || (dictionary = epoch.dictionary()) == null) {
+      return epoch.scan(follows, limit);
+    }
+    BitSet matches = new BitSet(dictionary.size());
+    if (((SortedArraySet) follows).intersect(dictionary.userids(), dictionary.size(), matches) == 0) {
+      return 0;
+    }
+    int hits = 0;
+    for (int code = matches.nextSetBit(0); code >= 0 && hits < limit; code = matches.nextSetBit(code + 1)) {
+      hits += dictionary.count(code);
+    }
+    return Math.min(hits, limit);
+  }
+}
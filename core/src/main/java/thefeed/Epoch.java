@@ -0,0 +1,181 @@
+package thefeed;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An epoch is a fixed capacity block of [userid, postid] entries kept in the order they were appended.
+ * Epochs are linked together newest first to form the feed and are never written again once sealed.
+ * <p/>
+ * There is a single writer at a time. Each entry is written before size is raised past it with a release
+ * store, so a reader that reads size once and scans below it never locks and never sees a torn entry.
+ */
+public abstract class Epoch {
+  private static final AtomicIntegerFieldUpdater<Epoch> SIZE =
+          AtomicIntegerFieldUpdater.newUpdater(Epoch.class, "size");
+
+  protected final int capacity;
+  protected volatile int size;
+  private volatile boolean sealed;
+  long sealedAt;
+  private volatile EpochSummary summary;
+  private volatile EpochDictionary dictionary;
+  long id;
+  Epoch next;
+
+  protected Epoch(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Recreate an epoch whose entries are already in its storage.
+   */
+  protected Epoch(int capacity, int size, boolean sealed) {
+    this.capacity = capacity;
+    this.size = size;
+    this.sealed = sealed;
+    if (sealed) {
+      sealedAt = System.currentTimeMillis();
+    }
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the position of this epoch in its feed, increasing with each new epoch
+   */
+  public long id() {
+    return id;
+  }
+
+  public boolean isSealed() {
+    return sealed;
+  }
+
+  /**
+   * @return a summary of the userids in the epoch or null if it is not sealed yet
+   */
+  public EpochSummary summary() {
+    EpochSummary summary = this.summary;
+    if (summary == null && sealed) {
+      // Epochs reopened already sealed are summarized by whichever reader gets here first
+      summary = EpochSummary.of(this);
+      this.summary = summary;
+    }
+    return summary;
+  }
+
+  /**
+   * @return the dictionary encoding of the userids in the epoch, or null if it is not sealed yet or was
+   *         reopened sealed and hasn't been linked into a feed
+   */
+  public EpochDictionary dictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return when the epoch was sealed in millis, or 0 if it is still open
+   */
+  public long sealedAt() {
+    return sealedAt;
+  }
+
+  /**
+   * @return the next older epoch in the feed or null if this is the oldest
+   */
+  public Epoch next() {
+    return next;
+  }
+
+  /**
+   * @return false if the epoch is full or sealed and the entry was not added
+   */
+  public boolean append(long userid, long postid) {
+    int index = size;
+    if (sealed || index == capacity) {
+      return false;
+    }
+    put(index, userid, postid);
+    SIZE.lazySet(this, index + 1);
+    return true;
+  }
+
+  protected void seal() {
+    if (!sealed) {
+      summary = EpochSummary.of(this);
+      dictionary = EpochDictionary.of(this);
+      sealedAt = System.currentTimeMillis();
+      sealed = true;
+    }
+  }
+
+  /**
+   * Build what seal would have for an epoch that was reopened already sealed, on the writer as it is linked
+   * so that no reader has to.
+   */
+  void encode() {
+    if (sealed && dictionary == null) {
+      summary = EpochSummary.of(this);
+      dictionary = EpochDictionary.of(this);
+    }
+  }
+
+  /**
+   * Empty the epoch so its storage can be reused for a new one.
+   */
+  void reset() {
+    SIZE.set(this, 0);
+    sealed = false;
+    summary = null;
+    dictionary = null;
+    sealedAt = 0;
+    id = 0;
+    next = null;
+  }
+
+  public abstract long userid(int index);
+
+  public abstract long postid(int index);
+
+  /**
+   * Copy the userids of length entries starting at index, oldest first.
+   */
+  public abstract void userids(int index, long[] into, int length);
+
+  protected abstract void put(int index, long userid, long postid);
+
+  /**
+   * Scan the entries newest first and count those whose userid is in the follow set.
+   *
+   * @param follows the userids to match
+   * @param limit   stop scanning once this many entries have matched
+   * @return the number of matching entries
+   */
+  public abstract int scan(FollowSet follows, int limit);
+
+  /**
+   * Scan the entries newest first and pass those whose userid is in the follow set to the collector.
+   *
+   * @param follows   the userids to match
+   * @param limit     stop scanning once this many entries have matched
+   * @param collector receives each match
+   * @return the number of matching entries
+   */
+  public abstract int scan(FollowSet follows, int limit, ScanCollector collector);
+
+  /**
+   * Scan the entries below from newest first, e.g. to resume an earlier scan of this epoch.
+   *
+   * @param follows   the userids to match
+   * @param from      scan the entries before this index
+   * @param limit     stop scanning once this many entries have matched
+   * @param collector receives each match
+   * @return the index to resume from, all entries at or above it have been scanned
+   */
+  public abstract int scan(FollowSet follows, int from, int limit, ScanCollector collector);
+}
@@ -0,0 +1,14 @@
+package thefeed;
+
+/**
+ * Creates the storage for new epochs as the feed grows and takes it back as old epochs expire.
+ */
+public interface EpochAllocator {
+  Epoch allocate(int capacity);
+
+  /**
+   * Called once an epoch has been unlinked from the feed and every reader that could have reached it has
+   * exited, so its storage can be reused straight away.
+   */
+  void release(Epoch epoch);
+}
@@ -0,0 +1,21 @@
+package thefeed;
+
+/**
+ * Keep the newest epochs up to a fixed number, which bounds both memory and the length of a full scan.
+ */
+public class EpochCountRetention implements RetentionPolicy {
+
+  private final int maxEpochs;
+
+  public EpochCountRetention(int maxEpochs) {
+    if (maxEpochs <= 0) {
+      throw new IllegalArgumentException("Must keep at least one epoch: " + maxEpochs);
+    }
+    this.maxEpochs = maxEpochs;
+  }
+
+  @Override
+  public boolean expire(Epoch oldest, int epochs, long now) {
+    return epochs > maxEpochs;
+  }
+}
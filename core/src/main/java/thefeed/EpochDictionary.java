@@ -0,0 +1,58 @@
+package thefeed;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary encoding of the userids in a sealed epoch: the distinct userids sorted with how many entries
+ * each has. A scan that only needs the number of matches can then intersect a sorted follow set with the
+ * dictionary once and add up the counts instead of hashing every userid.
+ * <p/>
+ * Built by the writer as the epoch is sealed, so readers never pay for it.
+ */
+public final class EpochDictionary {
+
+  private final long[] userids;
+  private final int[] counts;
+
+  private EpochDictionary(long[] userids, int[] counts) {
+    this.userids = userids;
+    this.counts = counts;
+  }
+
+  public static EpochDictionary of(Epoch epoch) {
+    int size = epoch.size();
+    long[] sorted = new long[size];
+    epoch.userids(0, sorted, size);
+    Arrays.sort(sorted);
+    int[] counts = new int[size];
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+      counts[distinct - 1]++;
+    }
+    return new EpochDictionary(Arrays.copyOf(sorted, distinct), Arrays.copyOf(counts, distinct));
+  }
+
+  /**
+   * @return the distinct userids in ascending order, not to be modified
+   */
+  public long[] userids() {
+    return userids;
+  }
+
+  /**
+   * @return the number of distinct userids
+   */
+  public int size() {
+    return userids.length;
+  }
+
+  /**
+   * @return the number of entries with the userid at the position in userids
+   */
+  public int count(int code) {
+    return counts[code];
+  }
+}
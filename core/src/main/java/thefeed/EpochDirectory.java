@@ -0,0 +1,109 @@
+package thefeed;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Allocates each epoch as a numbered memory mapped file in a directory so that the feed can be reopened
+ * after a restart without rebuilding it.
+ */
+public class EpochDirectory implements EpochAllocator {
+
+  private static final Logger log = Logger.getLogger(EpochDirectory.class.getName());
+  private static final String SUFFIX = ".epoch";
+
+  private final File dir;
+  // Files of expired epochs that couldn't be deleted yet
+  private final List<File> undeleted = new ArrayList<File>();
+  private int sequence;
+
+  public EpochDirectory(File dir) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IllegalArgumentException("Could not create epoch directory: " + dir);
+    }
+    this.dir = dir;
+    for (File file : files()) {
+      String name = file.getName();
+      sequence = Math.max(sequence, Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+    }
+  }
+
+  /**
+   * Open a feed with every epoch already in the directory, oldest first, and allocate new epochs here.
+   * Only the newest epoch is left open for appends.
+   *
+   * @param epochSize number of entries in each new epoch
+   */
+  public FeedStore open(int epochSize) {
+    return open(epochSize, RetentionPolicy.FOREVER);
+  }
+
+  /**
+   * Open the feed with a retention policy, expired epochs are deleted from the directory.
+   *
+   * @see #open(int)
+   */
+  public FeedStore open(int epochSize, RetentionPolicy retention) {
+    FeedStore store = new FeedStore(this, epochSize, retention);
+    File[] files = files();
+    for (File file : files) {
+      try {
+        store.link(MappedEpoch.open(file));
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not open epoch " + file, e);
+      }
+    }
+    return store;
+  }
+
+  @Override
+  public Epoch allocate(int capacity) {
+    retry();
+    File file = new File(dir, String.format("%010d%s", ++sequence, SUFFIX));
+    try {
+      return MappedEpoch.create(file, capacity);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not create epoch " + file, e);
+    }
+  }
+
+  /**
+   * Expired epochs are deleted. A file that can't be deleted, e.g. while another process has it open, is
+   * logged and deleted on a later release or allocation instead of failing the append that expired it.
+   */
+  @Override
+  public void release(Epoch epoch) {
+    retry();
+    File file = ((MappedEpoch) epoch).file();
+    if (!file.delete() && file.exists()) {
+      log.warning("Could not delete epoch " + file + ", will retry");
+      undeleted.add(file);
+    }
+  }
+
+  private void retry() {
+    for (Iterator<File> files = undeleted.iterator(); files.hasNext(); ) {
+      File file = files.next();
+      if (file.delete() || !file.exists()) {
+        files.remove();
+      }
+    }
+  }
+
+  private File[] files() {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX);
+      }
+    });
+    Arrays.sort(files);
+    return files;
+  }
+}
@@ -0,0 +1,41 @@
+package thefeed;
+
+/**
+ * Decides per query which epochs a scan can skip. Checking the summary costs a few probes per followee so
+ * it is only done when the follow set is much smaller than the epoch; larger follow sets would hit nearly
+ * every epoch anyway.
+ */
+final class EpochFilter {
+
+  private static final int FOLLOWEES_PER_ENTRY = 16;
+
+  private static final EpochFilter NONE = new EpochFilter(null);
+
+  private final long[] followees;
+
+  private EpochFilter(long[] followees) {
+    this.followees = followees;
+  }
+
+  /**
+   * @param follows   the follow set of the query
+   * @param epochSize the size of the epochs being scanned
+   */
+  static EpochFilter of(FollowSet follows, int epochSize) {
+    if ((long) follows.size() * FOLLOWEES_PER_ENTRY >= epochSize) {
+      return NONE;
+    }
+    return new EpochFilter(follows.toArray());
+  }
+
+  /**
+   * @return true if the epoch is sealed and its summary rules out every followee
+   */
+  boolean skip(Epoch epoch) {
+    if (followees == null || followees.length * FOLLOWEES_PER_ENTRY >= epoch.capacity()) {
+      return false;
+    }
+    EpochSummary summary = epoch.summary();
+    return summary != null && !summary.mightContainAny(followees);
+  }
+}
@@ -0,0 +1,51 @@
+package thefeed;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Recycles the storage of expired epochs so that continuous ingest does not keep allocating arrays or
+ * direct memory. The feed only releases an epoch once no reader can still be scanning it, so it can be
+ * handed out again at once.
+ * <p/>
+ * Mapped epochs can't be pooled: their files are named and headed for the epoch they were created as, so
+ * an EpochDirectory deletes them instead.
+ */
+public class EpochPool implements EpochAllocator {
+
+  private final EpochAllocator allocator;
+  private final Queue<Epoch> released = new ArrayDeque<Epoch>();
+
+  /**
+   * @param allocator creates epochs when none can be reused
+   */
+  public EpochPool(EpochAllocator allocator) {
+    if (allocator instanceof EpochDirectory) {
+      throw new IllegalArgumentException("Mapped epochs can't be pooled");
+    }
+    this.allocator = allocator;
+  }
+
+  @Override
+  public synchronized Epoch allocate(int capacity) {
+    Epoch epoch = released.peek();
+    if (epoch != null && epoch.capacity() == capacity) {
+      released.poll();
+      epoch.reset();
+      return epoch;
+    }
+    return allocator.allocate(capacity);
+  }
+
+  @Override
+  public synchronized void release(Epoch epoch) {
+    released.add(epoch);
+  }
+
+  /**
+   * @return the number of released epochs waiting to be reused
+   */
+  public synchronized int size() {
+    return released.size();
+  }
+}
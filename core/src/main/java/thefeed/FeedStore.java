@@ -0,0 +1,389 @@
+package thefeed;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The feed is a chain of reverse chronological epochs of [userid, postid] entries. New entries are appended
+ * to the head epoch and when it fills up it is sealed and a new head is linked in front of it.
+ * <p/>
+ * Writers are serialized on the store while readers never lock: a new epoch is fully linked before it is
+ * published as the head and entries are published by the epoch's size, so a scan sees a consistent prefix
+ * of the feed as of when it reached each epoch.
+ * <p/>
+ * Old epochs expire according to a retention policy by unlinking the tail of the chain and returning its
+ * storage to the allocator, so expiry never touches individual entries. Readers register while they walk
+ * the chain and an unlinked epoch is only returned once every reader that could have reached it has
+ * exited, so an allocator may reuse it straight away.
+ */
+public class FeedStore {
+
+  private final EpochAllocator allocator;
+  private final int epochSize;
+  private final RetentionPolicy retention;
+  private final AuthorIndex index;
+  // Newest first, only used by writers
+  private final Deque<Epoch> chain = new ArrayDeque<Epoch>();
+  private final Readers readers = new Readers();
+  // Unlinked epochs and the era each was unlinked in, oldest first, waiting for their readers to exit
+  private final Deque<Epoch> retired = new ArrayDeque<Epoch>();
+  private final Deque<Long> retiredIn = new ArrayDeque<Long>();
+  private volatile Epoch head;
+  private volatile int epochs;
+  private long sequence;
+  private long appended;
+  private volatile long entries;
+
+  /**
+   * @param allocator creates the storage for each epoch
+   * @param epochSize number of entries in each epoch
+   */
+  public FeedStore(EpochAllocator allocator, int epochSize) {
+    this(allocator, epochSize, RetentionPolicy.FOREVER);
+  }
+
+  /**
+   * @param allocator creates the storage for each epoch
+   * @param epochSize number of entries in each epoch
+   * @param retention expires old epochs whenever a new one is started
+   */
+  public FeedStore(EpochAllocator allocator, int epochSize, RetentionPolicy retention) {
+    this(allocator, epochSize, retention, null);
+  }
+
+  /**
+   * @param allocator creates the storage for each epoch
+   * @param epochSize number of entries in each epoch
+   * @param retention expires old epochs whenever a new one is started
+   * @param index     kept up to date with every entry in the feed, may be null
+   */
+  public FeedStore(EpochAllocator allocator, int epochSize, RetentionPolicy retention, AuthorIndex index) {
+    if (epochSize <= 0) {
+      throw new IllegalArgumentException("Epoch size must be positive: " + epochSize);
+    }
+    this.allocator = allocator;
+    this.epochSize = epochSize;
+    this.retention = retention;
+    this.index = index;
+  }
+
+  public synchronized void append(long userid, long postid) {
+    Epoch current = head;
+    boolean started = false;
+    if (current == null || !current.append(userid, postid)) {
+      seal();
+      Epoch epoch = allocator.allocate(epochSize);
+      epoch.append(userid, postid);
+      epoch.id = ++sequence;
+      epoch.next = current;
+      head = epoch;
+      chain.addFirst(epoch);
+      epochs++;
+      started = true;
+    }
+    entries++;
+    if (index != null) {
+      index.add(userid, appended, postid);
+    }
+    appended++;
+    if (started) {
+      expire(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Seal the head epoch so that the next append starts a new one.
+   */
+  public synchronized void seal() {
+    if (head != null) {
+      head.seal();
+    }
+  }
+
+  /**
+   * Link an existing epoch, e.g. one reopened from disk, in front of the head. If it is not sealed
+   * new entries will be appended to it.
+   */
+  public synchronized void link(Epoch epoch) {
+    seal();
+    epoch.encode();
+    epoch.id = ++sequence;
+    epoch.next = head;
+    head = epoch;
+    chain.addFirst(epoch);
+    epochs++;
+    entries += epoch.size();
+    if (index != null) {
+      for (int i = 0; i < epoch.size(); i++) {
+        index.add(epoch.userid(i), appended + i, epoch.postid(i));
+      }
+    }
+    appended += epoch.size();
+  }
+
+  /**
+   * Expire the oldest epochs that the retention policy no longer wants. The head is never expired. This
+   * runs whenever an append starts a new epoch; call it periodically to enforce age based retention while
+   * nothing is being appended, and to return epochs expired while readers were scanning them.
+   *
+   * @param now the current time in millis
+   * @return the number of epochs expired
+   */
+  public synchronized int expire(long now) {
+    int expired = 0;
+    while (chain.size() > 1) {
+      Epoch oldest = chain.peekLast();
+      if (!oldest.isSealed() || !retention.expire(oldest, chain.size(), now)) {
+        break;
+      }
+      chain.pollLast();
+      chain.peekLast().next = null;
+      epochs--;
+      entries -= oldest.size();
+      retired.add(oldest);
+      retiredIn.add(readers.era());
+      expired++;
+    }
+    if (expired > 0 && index != null) {
+      index.expire(appended - entries);
+    }
+    reclaim();
+    return expired;
+  }
+
+  /**
+   * Return the unlinked epochs that no reader can still be scanning to the allocator.
+   */
+  private void reclaim() {
+    if (retired.isEmpty()) {
+      return;
+    }
+    // Twice, so that with nobody reading everything is returned at once
+    readers.advance();
+    long era = readers.advance();
+    while (!retired.isEmpty() && retiredIn.peek() + 2 <= era) {
+      retiredIn.poll();
+      allocator.release(retired.poll());
+    }
+  }
+
+  /**
+   * Register a reader that walks the epochs from {@link #head()} itself, e.g. to scan them on other
+   * threads. No epoch it can reach is returned to the allocator until it exits, so every enter must be
+   * followed by an exit with the ticket, and the scans of the store already do this.
+   *
+   * @return the ticket to pass to exit
+   */
+  public int enter() {
+    return readers.enter();
+  }
+
+  public void exit(int ticket) {
+    readers.exit(ticket);
+  }
+
+  /**
+   * @return the newest epoch or null if nothing has been appended. Walk on from it between enter and exit.
+   */
+  public Epoch head() {
+    return head;
+  }
+
+  /**
+   * @return the author index kept alongside the epochs or null if there is none
+   */
+  public AuthorIndex index() {
+    return index;
+  }
+
+  public int epochSize() {
+    return epochSize;
+  }
+
+  public int epochs() {
+    return epochs;
+  }
+
+  public long size() {
+    return entries;
+  }
+
+  /**
+   * Scan the feed newest first and count the entries whose userid is in the follow set.
+   *
+   * @param follows the userids to match
+   * @param limit   stop scanning once this many entries have matched
+   * @return the number of matching entries
+   */
+  public int scan(FollowSet follows, int limit) {
+    return scan(follows, limit, ScanEngine.SCALAR);
+  }
+
+  /**
+   * Scan the feed newest first with the given engine.
+   *
+   * @see #scan(FollowSet, int)
+   */
+  public int scan(FollowSet follows, int limit, ScanEngine engine) {
+    ScanMetrics.Query metrics = ScanMetrics.ENABLED ? new ScanMetrics.Query() : null;
+    EpochFilter filter = EpochFilter.of(follows, epochSize);
+    int hits = 0;
+    int ticket = readers.enter();
+    try {
+      for (Epoch current = head; current != null && hits < limit; current = current.next) {
+        if (!filter.skip(current)) {
+          int found = engine.scan(current, follows, limit - hits);
+          if (ScanMetrics.ENABLED) {
+            metrics.epoch(current, follows, limit - hits, found);
+          }
+          hits += found;
+        }
+      }
+      if (ScanMetrics.ENABLED) {
+        // Before exiting, it may scan the last epoch again to see where the engine stopped
+        metrics.end(hits);
+      }
+    } finally {
+      readers.exit(ticket);
+    }
+    return hits;
+  }
+
+  /**
+   * @return the number of epochs a scan of the follow set skips because their summaries rule it out
+   */
+  public int skipped(FollowSet follows) {
+    EpochFilter filter = EpochFilter.of(follows, epochSize);
+    int skipped = 0;
+    int ticket = readers.enter();
+    try {
+      for (Epoch current = head; current != null; current = current.next) {
+        if (filter.skip(current)) {
+          skipped++;
+        }
+      }
+    } finally {
+      readers.exit(ticket);
+    }
+    return skipped;
+  }
+
+  /**
+   * Scan the feed newest first and pass the matching entries to the collector.
+   *
+   * @param follows   the userids to match
+   * @param limit     stop scanning once this many entries have matched
+   * @param collector receives each match
+   * @return the number of matching entries
+   */
+  public int scan(FollowSet follows, int limit, ScanCollector collector) {
+    ScanMetrics.Query metrics = ScanMetrics.ENABLED ? new ScanMetrics.Query() : null;
+    EpochFilter filter = EpochFilter.of(follows, epochSize);
+    int hits = 0;
+    int ticket = readers.enter();
+    try {
+      for (Epoch current = head; current != null && hits < limit; current = current.next) {
+        if (!filter.skip(current)) {
+          if (ScanMetrics.ENABLED) {
+            hits += metrics.scan(current, follows, limit - hits, collector);
+          } else {
+            hits += current.scan(follows, limit - hits, collector);
+          }
+        }
+      }
+      if (ScanMetrics.ENABLED) {
+        metrics.end(hits);
+      }
+    } finally {
+      readers.exit(ticket);
+    }
+    return hits;
+  }
+
+  /**
+   * The newest postids from the followed users. Epochs are already newest first so the scan stops as soon
+   * as it has found limit of them instead of walking the whole feed.
+   *
+   * @param follows the userids to match
+   * @param limit   the most postids to return
+   * @return the matching postids newest first
+   */
+  public long[] timeline(FollowSet follows, int limit) {
+    ScanResults results = new ScanResults(Math.min(limit, 1024));
+    scan(follows, limit, results);
+    return results.toArray();
+  }
+
+  /**
+   * The first page of a timeline.
+   *
+   * @see #page(FollowSet, int, long)
+   */
+  public TimelinePage page(FollowSet follows, int limit) {
+    int ticket = readers.enter();
+    try {
+      Epoch current = head;
+      if (current == null) {
+        return new TimelinePage(new long[0], TimelinePage.END);
+      }
+      return page(follows, limit, current, current.size());
+    } finally {
+      readers.exit(ticket);
+    }
+  }
+
+  /**
+   * The next page of a timeline, resuming exactly where the previous page stopped so each page only
+   * scans the entries it returns. Entries appended since the first page are not included.
+   *
+   * @param follows the userids to match
+   * @param limit   the most postids to return
+   * @param cursor  from the previous page
+   */
+  public TimelinePage page(FollowSet follows, int limit, long cursor) {
+    if (cursor == TimelinePage.END) {
+      return new TimelinePage(new long[0], TimelinePage.END);
+    }
+    long id = cursor >>> 32;
+    int ticket = readers.enter();
+    try {
+      Epoch current = head;
+      while (current != null && current.id > id) {
+        current = current.next;
+      }
+      if (current == null) {
+        return new TimelinePage(new long[0], TimelinePage.END);
+      }
+      return page(follows, limit, current, current.id == id ? (int) cursor : current.size());
+    } finally {
+      readers.exit(ticket);
+    }
+  }
+
+  private TimelinePage page(FollowSet follows, int limit, Epoch current, int from) {
+    ScanMetrics.Query metrics = ScanMetrics.ENABLED ? new ScanMetrics.Query() : null;
+    EpochFilter filter = EpochFilter.of(follows, epochSize);
+    ScanResults results = new ScanResults(Math.min(limit, 1024));
+    while (current != null && results.size() < limit) {
+      if (!filter.skip(current)) {
+        int resume = current.scan(follows, from, limit - results.size(), results);
+        if (ScanMetrics.ENABLED) {
+          metrics.entries(from - resume);
+        }
+        from = resume;
+      } else {
+        from = 0;
+      }
+      if (from == 0) {
+        current = current.next;
+        if (current != null) {
+          from = current.size();
+        }
+      }
+    }
+    if (ScanMetrics.ENABLED) {
+      metrics.end(results.size());
+    }
+    return new TimelinePage(results.toArray(), current == null ? TimelinePage.END : current.id << 32 | from);
+  }
+}
@@ -0,0 +1,28 @@
+package thefeed;
+
+/**
+ * The users someone follows, as the scans match them against the feed. Long.MIN_VALUE and Long.MAX_VALUE
+ * are reserved as the empty and removed markers of the hash tables: every set rejects them in add with an
+ * IllegalArgumentException and never contains them, so that sets can be swapped for one another freely.
+ * <p/>
+ * User: sam
+ * Date: 6/19/11
+ * Time: 11:59 AM
+ */
+public interface FollowSet {
+  boolean add(long l);
+
+  boolean contains(long l);
+
+  void report();
+
+  long[] getKeys();
+
+  int size();
+
+  /**
+   * @return the userids in the set without any empty or removed slots
+   */
+  long[] toArray();
+
+}
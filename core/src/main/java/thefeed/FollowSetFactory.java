@@ -0,0 +1,158 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+/**
+ * Picks the follow set representation and capacity for a user's followees:
+ * <ul>
+ * <li>a sorted array for a handful of followees</li>
+ * <li>a bitmap when the followees are dense enough that one bit per userid in their range costs no more
+ * memory than a hash table</li>
+ * <li>otherwise a hash table sized for the followees, linear probing while it is small and cache line
+ * buckets once it is large enough for probes to miss cache</li>
+ * </ul>
+ * The crossover points depend on the platform so {@link #calibrate()} measures them. DEFAULT holds the
+ * ones measured on a single core development box, where the sorted array wins up to about 8 followees
+ * and the blocked table beats linear probing at every size from 2 to 65536 followees, 13 to 25ns a lookup
+ * against 20 to 37ns. So DEFAULT never picks FastIDSet2: its blockedMin is at or below sortedMax and every
+ * set too large for a sorted array and too sparse for a bitmap is a BlockedHashSet. A FastIDSet2 only
+ * comes from a factory calibrated on a platform where linear probing wins for small tables.
+ */
+public class FollowSetFactory {
+
+  // From calibrate(), which found the blocked table ahead from the smallest size it measures
+  public static final FollowSetFactory DEFAULT = new FollowSetFactory(8, 2);
+
+  // A hash table takes about 2 longs per followee at its usual load
+  private static final int BITMAP_BITS_PER_FOLLOWEE = 128;
+
+  private final int sortedMax;
+  private final int blockedMin;
+
+  /**
+   * @param sortedMax  the most followees to keep in a sorted array
+   * @param blockedMin the fewest followees to put in a BlockedHashSet rather than a FastIDSet2
+   */
+  public FollowSetFactory(int sortedMax, int blockedMin) {
+    this.sortedMax = sortedMax;
+    this.blockedMin = blockedMin;
+  }
+
+  public int sortedMax() {
+    return sortedMax;
+  }
+
+  public int blockedMin() {
+    return blockedMin;
+  }
+
+  /**
+   * @param userids the followees, need not be sorted or distinct
+   */
+  public FollowSet create(long[] userids) {
+    SortedArraySet sorted = new SortedArraySet(userids);
+    int size = sorted.size();
+    if (size <= sortedMax) {
+      return sorted;
+    }
+    long[] distinct = sorted.toArray();
+    FollowSet set;
+    // Compared as doubles as the span of arbitrary userids can overflow
+    if ((double) distinct[size - 1] - distinct[0] < (double) size * BITMAP_BITS_PER_FOLLOWEE) {
+      set = new BitmapSet();
+    } else if (size < blockedMin) {
+      set = new FastIDSet2(size);
+    } else {
+      set = new BlockedHashSet(size);
+    }
+    for (long userid : distinct) {
+      set.add(userid);
+    }
+    return set;
+  }
+
+  /**
+   * Time lookups of sparse follow sets of increasing size to find where the sorted array stops beating a
+   * hash table and where BlockedHashSet starts beating FastIDSet2. Takes a second or two.
+   */
+  public static FollowSetFactory calibrate() {
+    return calibrate(false);
+  }
+
+  static FollowSetFactory calibrate(boolean verbose) {
+    Random r = new Random(0);
+    long[] probes = new long[1 << 20];
+    int sortedMax = 1;
+    int blockedMin = 0;
+    int blockedWins = 0;
+    if (verbose) {
+      System.out.println("FOLLOWEES,SORTED,FASTIDSET2,BLOCKED");
+    }
+    for (int size = 2; size <= 1 << 16; size *= 2) {
+      // Sparse so the bitmap never applies, probes hit about one in eight
+      int range = size * 1000;
+      long[] userids = new long[size];
+      for (int i = 0; i < size; i++) {
+        userids[i] = r.nextInt(range);
+      }
+      for (int i = 0; i < probes.length; i++) {
+        probes[i] = i % 8 == 0 ? userids[r.nextInt(size)] : r.nextInt(range);
+      }
+      long sorted = time(new SortedArraySet(userids), probes);
+      long hash = time(fill(new FastIDSet2(size), userids), probes);
+      long blocked = time(fill(new BlockedHashSet(size), userids), probes);
+      if (verbose) {
+        System.out.println(size + "," + sorted + "," + hash + "," + blocked);
+      }
+      if (sorted <= Math.min(hash, blocked) && sortedMax == size / 2) {
+        sortedMax = size;
+      }
+      // Wants two sizes in a row to avoid switching on noise
+      blockedWins = blocked < hash ? blockedWins + 1 : 0;
+      if (blockedWins == 2 && blockedMin == 0) {
+        blockedMin = size / 2;
+      }
+    }
+    return new FollowSetFactory(sortedMax, blockedMin == 0 ? Integer.MAX_VALUE : blockedMin);
+  }
+
+  private static FollowSet fill(FollowSet set, long[] userids) {
+    for (long userid : userids) {
+      set.add(userid);
+    }
+    return set;
+  }
+
+  /**
+   * @return the best nanoseconds per 1000 lookups of a few runs
+   */
+  private static long time(FollowSet set, long[] probes) {
+    long best = Long.MAX_VALUE;
+    int hits = 0;
+    for (int run = 0; run < 3; run++) {
+      long start = System.nanoTime();
+      for (long probe : probes) {
+        if (set.contains(probe)) {
+          hits++;
+        }
+      }
+      best = Math.min(best, (System.nanoTime() - start) * 1000 / probes.length);
+    }
+    // Keeps the loop from being optimised away
+    return hits == -1 ? 0 : best;
+  }
+
+  @Override
+  public String toString() {
+    return "FollowSetFactory{sortedMax=" + sortedMax + ", blockedMin=" + blockedMin + "}";
+  }
+
+  /**
+   * Prints the calibration run.
+   */
+  public static void main(String[] args) {
+    System.out.println(calibrate(true));
+  }
+}
@@ -0,0 +1,112 @@
+package thefeed;
+
+/**
+ * Log-linear histogram of non-negative values in the style of HdrHistogram: values below 16 are counted
+ * exactly and larger ones in 8 buckets per power of two, so any percentile is within 12.5% of the true
+ * value and recording is a few shifts and an increment with no allocation.
+ * <p/>
+ * Not thread-safe, guard each one with a lock or keep one per thread and add them together to read.
+ */
+public class Histogram {
+
+  private static final int EXACT = 16;
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Exponents 4 to 62, with 63 being negative
+  private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long total;
+  private long max;
+
+  public void record(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative value: " + value);
+    }
+    counts[bucket(value)]++;
+    count++;
+    total += value;
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  static int bucket(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return the smallest value that falls in the bucket
+   */
+  static long lowest(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+    int sub = (bucket - EXACT) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+  }
+
+  /**
+   * Add another histogram's counts to this one.
+   */
+  public void add(Histogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    total += other.total;
+    max = Math.max(max, other.max);
+  }
+
+  public long count() {
+    return count;
+  }
+
+  /**
+   * @return the sum of the values recorded
+   */
+  public long total() {
+    return total;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  public double mean() {
+    return count == 0 ? 0 : (double) total / count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the lowest value of the bucket holding the percentile, or the max if that's the highest bucket,
+   * 0 if nothing was recorded
+   */
+  public long percentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile out of range: " + percentile);
+    }
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && seen > 0) {
+        return seen == count ? max : lowest(i);
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d",
+        count, mean(), percentile(50), percentile(99), percentile(99.9), max);
+  }
+}
@@ -0,0 +1,72 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+/**
+ * Data parallel scan against a FastIDSet2 that works the way feedscan.cl does on a GPU. Userids are loaded
+ * a batch of lanes at a time, the home slot of every lane is gathered from the power of two key table and
+ * compared in one pass, and only lanes that landed on a collision fall back to linear probing. The loads
+ * of a batch are independent so the CPU can overlap their cache misses instead of waiting on each probe.
+ * Other follow sets are scanned with the scalar engine.
+ * <p/>
+ * The lanes are held in buffers kept per thread, so a scan allocates nothing however many epochs it covers.
+ */
+public class LaneScanEngine implements ScanEngine {
+
+  private static final int LANES = 8;
+  private static final long NULL = Long.MIN_VALUE;
+  private static final long REMOVED = Long.MAX_VALUE;
+
+  private final ThreadLocal<Lanes> scratch = new ThreadLocal<Lanes>() {
+    @Override
+    protected Lanes initialValue() {
+      return new Lanes();
+    }
+  };
+
+  /**
+   * The userids of a batch of lanes and the home slots they landed on.
+   */
+  private static final class Lanes {
+    final long[] userids = new long[LANES];
+    final long[] slots = new long[LANES];
+  }
+
+  @Override
+  public int scan(Epoch epoch, FollowSet follows, int limit) {
+    if (!(follows instanceof FastIDSet2)) {
+      return epoch.scan(follows, limit);
+    }
+    long[] keys = follows.getKeys();
+    int mask = keys.length - 1;
+    Lanes scratch = this.scratch.get();
+    long[] lanes = scratch.userids;
+    long[] slots = scratch.slots;
+    int hits = 0;
+    int i = epoch.size();
+    while (i >= LANES) {
+      i -= LANES;
+      epoch.userids(i, lanes, LANES);
+      for (int l = 0; l < LANES; l++) {
+        slots[l] = keys[(int) lanes[l] & mask];
+      }
+      for (int l = 0; l < LANES; l++) {
+        long key = lanes[l];
+        long slot = slots[l];
+        // An empty home slot is a miss, otherwise it is either the key or the start of a probe sequence
+        if (slot != NULL && (slot == key ? key != REMOVED : follows.contains(key))) {
+          hits++;
+        }
+      }
+      if (hits >= limit) {
+        return limit;
+      }
+    }
+    while (--i >= 0 && hits < limit) {
+      if (follows.contains(epoch.userid(i))) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+}
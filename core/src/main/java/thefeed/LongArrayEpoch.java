@@ -0,0 +1,96 @@
+package thefeed;
+
+/**
+ * Epoch backed by a heap long[] of interleaved [userid, postid] pairs.
+ */
+public class LongArrayEpoch extends Epoch {
+
+  public static final EpochAllocator ALLOCATOR = new EpochAllocator() {
+    @Override
+    public Epoch allocate(int capacity) {
+      return new LongArrayEpoch(capacity);
+    }
+
+    @Override
+    public void release(Epoch epoch) {
+      // Left to the garbage collector, use an EpochPool to reuse the arrays
+    }
+  };
+
+  private final long[] feed;
+
+  public LongArrayEpoch(int capacity) {
+    super(capacity);
+    feed = new long[capacity * 2];
+  }
+
+  @Override
+  public long userid(int index) {
+    return feed[index * 2];
+  }
+
+  @Override
+  public long postid(int index) {
+    return feed[index * 2 + 1];
+  }
+
+  @Override
+  public void userids(int index, long[] into, int length) {
+    long[] feed = this.feed;
+    for (int i = 0; i < length; i++) {
+      into[i] = feed[(index + i) * 2];
+    }
+  }
+
+  @Override
+  protected void put(int index, long userid, long postid) {
+    feed[index * 2] = userid;
+    feed[index * 2 + 1] = postid;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit) {
+    long[] feed = this.feed;
+    int hits = 0;
+    for (int i = size * 2 - 2; i >= 0; i -= 2) {
+      if (follows.contains(feed[i])) {
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit, ScanCollector collector) {
+    long[] feed = this.feed;
+    int hits = 0;
+    for (int i = size * 2 - 2; i >= 0; i -= 2) {
+      long userid = feed[i];
+      if (follows.contains(userid)) {
+        collector.collect(userid, feed[i + 1]);
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int from, int limit, ScanCollector collector) {
+    long[] feed = this.feed;
+    int hits = 0;
+    for (int i = from - 1; i >= 0; i--) {
+      long userid = feed[i * 2];
+      if (follows.contains(userid)) {
+        collector.collect(userid, feed[i * 2 + 1]);
+        if (++hits == limit) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,117 @@
+package thefeed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Epoch backed by a LongBuffer of interleaved [userid, postid] pairs, normally allocated in direct memory
+ * so it lives outside the heap and can be handed to native code as is.
+ */
+public class LongBufferEpoch extends Epoch {
+
+  public static final EpochAllocator DIRECT = allocator(ByteOrder.nativeOrder());
+
+  /**
+   * @param order byte order of the direct buffers, e.g. the order of an OpenCL device
+   */
+  public static EpochAllocator allocator(final ByteOrder order) {
+    return new EpochAllocator() {
+      @Override
+      public Epoch allocate(int capacity) {
+        return new LongBufferEpoch(ByteBuffer.allocateDirect(capacity * 16).order(order).asLongBuffer());
+      }
+
+      @Override
+      public void release(Epoch epoch) {
+        // Freed when the buffer is collected, use an EpochPool to reuse the direct memory
+      }
+    };
+  }
+
+  private final LongBuffer feed;
+
+  public LongBufferEpoch(LongBuffer feed) {
+    super(feed.capacity() / 2);
+    this.feed = feed;
+  }
+
+  protected LongBufferEpoch(LongBuffer feed, int size, boolean sealed) {
+    super(feed.capacity() / 2, size, sealed);
+    this.feed = feed;
+  }
+
+  public LongBuffer buffer() {
+    return feed;
+  }
+
+  @Override
+  public long userid(int index) {
+    return feed.get(index * 2);
+  }
+
+  @Override
+  public long postid(int index) {
+    return feed.get(index * 2 + 1);
+  }
+
+  @Override
+  public void userids(int index, long[] into, int length) {
+    LongBuffer feed = this.feed;
+    for (int i = 0; i < length; i++) {
+      into[i] = feed.get((index + i) * 2);
+    }
+  }
+
+  @Override
+  protected void put(int index, long userid, long postid) {
+    feed.put(index * 2, userid);
+    feed.put(index * 2 + 1, postid);
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit) {
+    LongBuffer feed = this.feed;
+    int hits = 0;
+    for (int i = size * 2 - 2; i >= 0; i -= 2) {
+      if (follows.contains(feed.get(i))) {
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int limit, ScanCollector collector) {
+    LongBuffer feed = this.feed;
+    int hits = 0;
+    for (int i = size * 2 - 2; i >= 0; i -= 2) {
+      long userid = feed.get(i);
+      if (follows.contains(userid)) {
+        collector.collect(userid, feed.get(i + 1));
+        if (++hits == limit) {
+          break;
+        }
+      }
+    }
+    return hits;
+  }
+
+  @Override
+  public int scan(FollowSet follows, int from, int limit, ScanCollector collector) {
+    LongBuffer feed = this.feed;
+    int hits = 0;
+    for (int i = from - 1; i >= 0; i--) {
+      long userid = feed.get(i * 2);
+      if (follows.contains(userid)) {
+        collector.collect(userid, feed.get(i * 2 + 1));
+        if (++hits == limit) {
+          return i;
+        }
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,107 @@
+package thefeed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Epoch stored in a memory mapped file so that it survives restarts and is cached by the OS rather than
+ * the heap. The file has a fixed little endian layout:
+ * <pre>
+ * int magic, int capacity, int size, int sealed
+ * long userid, long postid (capacity times)
+ * </pre>
+ * The size is updated on every append so an unsealed epoch can be reopened with everything written to it.
+ */
+public class MappedEpoch extends LongBufferEpoch {
+
+  static final int MAGIC = 0x46454544;
+  static final int HEADER = 16;
+  private static final int CAPACITY_OFFSET = 4;
+  private static final int SIZE_OFFSET = 8;
+  private static final int SEALED_OFFSET = 12;
+
+  private final File file;
+  private final MappedByteBuffer map;
+
+  private MappedEpoch(File file, MappedByteBuffer map) {
+    super(entries(map), map.getInt(SIZE_OFFSET), map.getInt(SEALED_OFFSET) != 0);
+    this.file = file;
+    this.map = map;
+  }
+
+  private static LongBuffer entries(MappedByteBuffer map) {
+    ByteBuffer entries = map.duplicate();
+    entries.position(HEADER);
+    return entries.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+  }
+
+  /**
+   * Create a new empty epoch file, replacing any existing file.
+   */
+  public static MappedEpoch create(File file, int capacity) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity * 16L);
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      map.putInt(0, MAGIC);
+      map.putInt(CAPACITY_OFFSET, capacity);
+      return new MappedEpoch(file, map);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Map an existing epoch file. Sealed epochs are mapped read only.
+   */
+  public static MappedEpoch open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      map.order(ByteOrder.LITTLE_ENDIAN);
+      if (map.capacity() < HEADER || map.getInt(0) != MAGIC ||
+              map.capacity() != HEADER + map.getInt(CAPACITY_OFFSET) * 16L) {
+        throw new IOException("Not an epoch file: " + file);
+      }
+      if (map.getInt(SEALED_OFFSET) == 0) {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        map.order(ByteOrder.LITTLE_ENDIAN);
+      }
+      MappedEpoch epoch = new MappedEpoch(file, map);
+      if (epoch.isSealed()) {
+        // The file was last written when it was sealed
+        epoch.sealedAt = file.lastModified();
+      }
+      return epoch;
+    } finally {
+      raf.close();
+    }
+  }
+
+  public File file() {
+    return file;
+  }
+
+  @Override
+  protected void put(int index, long userid, long postid) {
+    super.put(index, userid, postid);
+    map.putInt(SIZE_OFFSET, index + 1);
+  }
+
+  @Override
+  protected void seal() {
+    if (!isSealed()) {
+      super.seal();
+      map.putInt(SEALED_OFFSET, 1);
+      map.force();
+    }
+  }
+}
@@ -39,7 +39,7 @@ public class OpenCL {
   public static void main(String[] args) throws ExecutionException, InterruptedException, CLBuildException, IOException {
     CLContext context = JavaCL.createBestContext();
     StringBuffer sb = new StringBuffer();
-    Files.copy(new File("src/main/resources/feedscan.cl"), Charsets.UTF_8, sb);
+    Files.copy(new File("core/src/main/resources/feedscan.cl"), Charsets.UTF_8, sb);
     String myKernelSource = sb.toString();
     CLProgram program = context.createProgram(myKernelSource).build();
     CLKernel kernel = program.createKernel("myKernel");
@@ -61,35 +61,29 @@ public class OpenCL {
     }
     clSetBuffer.unmap(queue, setbuffer);
 
-    LinkedFeed head = null;
-    LinkedFeed current = null;
-    for (int j = 0; j < BLOCKS; j++) {
-      LinkedFeed tmp = current;
-      CLLongBuffer longBuffer = createCLBuffer(context, order, TIMES / BLOCKS * 2);
-      LongBuffer feed = longBuffer.map(queue, CLMem.MapFlags.Write);
-      current = new LinkedFeed(longBuffer, current);
-      current.next = tmp;
-      head = current;
-      for (int i = 0; i < TIMES / BLOCKS * 2; i += 2) {
-        feed.put(i, r.nextInt(RANGE));
-        feed.put(i + 1, 0);
-      }
-      longBuffer.unmap(queue, feed);
+    FeedStore store = new FeedStore(LongBufferEpoch.allocator(order), TIMES / BLOCKS);
+    for (int i = 0; i < TIMES; i++) {
+      store.append(r.nextInt(RANGE), i);
+    }
+    // Share the direct memory of each epoch with the device rather than copying it
+    List<Pair<CLLongBuffer, Integer>> epochs = new ArrayList<Pair<CLLongBuffer, Integer>>();
+    for (Epoch epoch = store.head(); epoch != null; epoch = epoch.next()) {
+      LongBuffer feed = ((LongBufferEpoch) epoch).buffer();
+      epochs.add(new Pair<CLLongBuffer, Integer>(context.createLongBuffer(CLMem.Usage.Input, feed, false), epoch.size()));
     }
 
     while(true) {
-      test(context, kernel, queue, length, clSetBuffer, head);
+      test(context, kernel, queue, length, clSetBuffer, epochs);
     }
   }
 
-  private static void test(CLContext context, CLKernel kernel, CLQueue queue, int length, CLLongBuffer clSetBuffer, LinkedFeed head) {
-    LinkedFeed current;
+  private static void test(CLContext context, CLKernel kernel, CLQueue queue, int length, CLLongBuffer clSetBuffer, List<Pair<CLLongBuffer, Integer>> epochs) {
     long start = System.currentTimeMillis();
     long hits = 0;
     System.out.println("TOTAL,HITS");
     List<Pair<CLEvent, CLIntBuffer>> pairs = new ArrayList<Pair<CLEvent, CLIntBuffer>>();
-    for (current = head; current != null; current = current.next) {
-      CLLongBuffer clFeed = current.value;
+    for (Pair<CLLongBuffer, Integer> epoch : epochs) {
+      CLLongBuffer clFeed = epoch.fst;
       CLIntBuffer clhits = context.createIntBuffer(CLMem.Usage.Output, 1);
       CLEvent kernelCompletion;
       // The same kernel can be safely used by different threads, as long as setArgs + enqueueNDRange are in a synchronized block
@@ -97,7 +91,7 @@ public class OpenCL {
         // setArgs will throw an exception at runtime if the types / sizes of the arguments are incorrect
         kernel.setArgs(clFeed, clSetBuffer, clhits, length - 1);
         // Ask for 1-dimensional execution of length dataSize, with auto choice of local workgroup size :
-        kernelCompletion = kernel.enqueueNDRange(queue, new int[]{TIMES/BLOCKS});
+        kernelCompletion = kernel.enqueueNDRange(queue, new int[]{epoch.snd});
       }
       pairs.add(new Pair<CLEvent, CLIntBuffer>(kernelCompletion, clhits));
     }
@@ -115,21 +109,4 @@ public class OpenCL {
   private static int RANGE = 100000;
   private static int BLOCKS = 4;
   private static int TIMES = 30000000;
-
-  /**
-   * We create the feed by linking together reverse chronological epochs of entries.
-   * <p/>
-   * User: sam
-   * Date: 5/22/11
-   * Time: 2:01 PM
-   */
-  private static class LinkedFeed {
-    CLLongBuffer value;
-    LinkedFeed next;
-
-    public LinkedFeed(CLLongBuffer value, LinkedFeed next) {
-      this.value = value;
-      this.next = next;
-    }
-  }
 }
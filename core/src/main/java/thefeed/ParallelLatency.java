@@ -0,0 +1,52 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measure the latency of a single query as it is partitioned across more cores. Run with -server and 2G of
+ * memory.
+ */
+public class ParallelLatency {
+
+  private static final int FOLLOWEES = 1000;
+  private static final int QUERIES = 20;
+
+  public static void main(String[] args) throws InterruptedException {
+    Random r = new Random();
+    FollowSet comparisons = new FastIDSet2(10000);
+    for (int i = 0; i < FOLLOWEES; i++) {
+      comparisons.add((long) r.nextInt(RANGE));
+    }
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, TIMES / BLOCKS);
+    for (int i = 0; i < TIMES; i++) {
+      store.append(r.nextInt(RANGE), i);
+    }
+    System.out.println("CORES,LATENCY,SPEEDUP,HITS");
+    double single = 0;
+    for (int cpus = 1; cpus <= Runtime.getRuntime().availableProcessors(); cpus++) {
+      ExecutorService es = Executors.newFixedThreadPool(cpus);
+      ParallelScanner scanner = new ParallelScanner(es, cpus);
+      // Warm up the pool and the scan before timing
+      scanner.scan(store, comparisons, Integer.MAX_VALUE);
+      int hits = 0;
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < QUERIES; i++) {
+        hits = scanner.scan(store, comparisons, Integer.MAX_VALUE);
+      }
+      double latency = (double) (System.currentTimeMillis() - start) / QUERIES;
+      es.shutdownNow();
+      if (cpus == 1) {
+        single = latency;
+      }
+      System.out.println(cpus + "," + latency + "," + single / latency + "," + hits);
+    }
+  }
+
+  private static int RANGE = 100000;
+  private static int BLOCKS = 5000;
+  private static int TIMES = 30000000;
+}
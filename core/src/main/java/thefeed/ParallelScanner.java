@@ -0,0 +1,195 @@
+package thefeed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a single query across cores. The epochs of the feed are divided into contiguous ranges, each
+ * range is scanned by its own task and the partial results are merged, so the latency of one query drops
+ * with the number of partitions rather than every thread scanning the whole feed.
+ */
+public class ParallelScanner {
+
+  private final ExecutorService executor;
+  private final int partitions;
+
+  /**
+   * @param executor   runs the partition tasks, should have at least partitions threads
+   * @param partitions the number of epoch ranges to split each query into
+   */
+  public ParallelScanner(ExecutorService executor, int partitions) {
+    if (partitions <= 0) {
+      throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+    }
+    this.executor = executor;
+    this.partitions = partitions;
+  }
+
+  public int scan(FeedStore store, FollowSet follows, int limit) throws InterruptedException {
+    return scan(store, follows, limit, ScanEngine.SCALAR);
+  }
+
+  /**
+   * Count the entries of the feed whose userid is in the follow set using every partition.
+   *
+   * @see FeedStore#scan(FollowSet, int, ScanEngine)
+   */
+  public int scan(FeedStore store, final FollowSet follows, final int limit, final ScanEngine engine)
+          throws InterruptedException {
+    final EpochFilter filter = EpochFilter.of(follows, store.epochSize());
+    final Hold hold = new Hold(store);
+    try {
+      List<List<Epoch>> ranges = partition(store);
+      List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(ranges.size());
+      for (final List<Epoch> range : ranges) {
+        tasks.add(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int hits = 0;
+            if (!hold.acquire()) {
+              return hits;
+            }
+            try {
+              for (Epoch epoch : range) {
+                if (hits >= limit) {
+                  break;
+                }
+                if (!filter.skip(epoch)) {
+                  hits += engine.scan(epoch, follows, limit - hits);
+                }
+              }
+            } finally {
+              hold.release();
+            }
+            return hits;
+          }
+        });
+      }
+      long hits = 0;
+      for (Future<Integer> partial : executor.invokeAll(tasks)) {
+        hits += join(partial);
+      }
+      return (int) Math.min(hits, limit);
+    } finally {
+      hold.release();
+    }
+  }
+
+  /**
+   * Collect the postids of the matching entries newest first. Each partition collects into its own buffer
+   * and the buffers are merged in feed order once they are all done.
+   *
+   * @see FeedStore#scan(FollowSet, int, ScanCollector)
+   */
+  public int scan(FeedStore store, final FollowSet follows, final int limit, ScanResults results)
+          throws InterruptedException {
+    final EpochFilter filter = EpochFilter.of(follows, store.epochSize());
+    final Hold hold = new Hold(store);
+    try {
+      List<List<Epoch>> ranges = partition(store);
+      List<Callable<ScanResults>> tasks = new ArrayList<Callable<ScanResults>>(ranges.size());
+      for (final List<Epoch> range : ranges) {
+        tasks.add(new Callable<ScanResults>() {
+          @Override
+          public ScanResults call() {
+            ScanResults partial = new ScanResults();
+            if (!hold.acquire()) {
+              return partial;
+            }
+            try {
+              int hits = 0;
+              for (Epoch epoch : range) {
+                if (hits >= limit) {
+                  break;
+                }
+                if (!filter.skip(epoch)) {
+                  hits += epoch.scan(follows, limit - hits, partial);
+                }
+              }
+            } finally {
+              hold.release();
+            }
+            return partial;
+          }
+        });
+      }
+      int start = results.size();
+      for (Future<ScanResults> partial : executor.invokeAll(tasks)) {
+        results.merge(join(partial), start + limit);
+      }
+      return results.size() - start;
+    } finally {
+      hold.release();
+    }
+  }
+
+  /**
+   * Keeps the caller registered as a reader of the store until both it and every partition that started
+   * are done, so that partitions still running after the caller was interrupted never scan epochs the
+   * store has reused. Partitions that start after that don't scan at all.
+   */
+  private static final class Hold {
+    private final FeedStore store;
+    private final int ticket;
+    private final AtomicInteger holders = new AtomicInteger(1);
+
+    Hold(FeedStore store) {
+      this.store = store;
+      ticket = store.enter();
+    }
+
+    /**
+     * @return false if everyone else is done and the partition must not scan
+     */
+    boolean acquire() {
+      while (true) {
+        int count = holders.get();
+        if (count == 0) {
+          return false;
+        }
+        if (holders.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (holders.decrementAndGet() == 0) {
+        store.exit(ticket);
+      }
+    }
+  }
+
+  private List<List<Epoch>> partition(FeedStore store) {
+    List<Epoch> epochs = new ArrayList<Epoch>(store.epochs());
+    for (Epoch current = store.head(); current != null; current = current.next()) {
+      epochs.add(current);
+    }
+    int workers = Math.min(partitions, epochs.size());
+    List<List<Epoch>> ranges = new ArrayList<List<Epoch>>(workers);
+    for (int i = 0; i < workers; i++) {
+      ranges.add(epochs.subList(epochs.size() * i / workers, epochs.size() * (i + 1) / workers));
+    }
+    return ranges;
+  }
+
+  private static <T> T join(Future<T> partial) throws InterruptedException {
+    try {
+      return partial.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+/**
+ * Follow set backed by a minimal perfect hash so that contains is a single probe into a table exactly as
+ * large as the set. Keys are gathered by add and the hash is built on first use, or explicitly by set,
+ * using hash and displace: keys are split into small buckets and each bucket, largest first, searches for
+ * a pilot value that moves all of its keys into free slots. The search is randomized with no bound on its
+ * time: the last buckets placed try many pilots as the table fills, and if one runs out the whole build
+ * starts again with a new seed, so build sets ahead of the scans that use them. Looking a key up is then
+ * its bucket's pilot followed by one compare against the slot it hashes to.
+ * <p/>
+ * Long.MIN_VALUE and Long.MAX_VALUE are reserved by the set the keys are gathered in and can't be added.
+ * <p/>
+ * Adding a key after the hash is built discards it and the next lookup builds it again.
+ * <p/>
+ * User: sam
+ * Date: 5/30/11
+ * Time: 11:20 AM
+ */
+public class PerfectHashSet implements FollowSet {
+
+  // Average number of keys per bucket, fewer buckets use less space but take longer to build
+  private static final int BUCKET_SIZE = 4;
+  // Give up on a seed if a bucket needs more pilots than this
+  private static final int MAX_PILOT = 1 << 20;
+  private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+  private final FastIDSet2 keys;
+  private volatile Table table;
+
+  public PerfectHashSet() {
+    this(16);
+  }
+
+  public PerfectHashSet(int size) {
+    keys = new FastIDSet2(size);
+  }
+
+  @Override
+  public synchronized boolean add(long userid) {
+    if (userid == Long.MIN_VALUE || userid == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Reserved userid: " + userid);
+    }
+    if (keys.add(userid)) {
+      table = null;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(long userid) {
+    Table table = this.table;
+    if (table == null) {
+      table = build();
+    }
+    return table.contains(userid);
+  }
+
+  /**
+   * Build the hash now rather than on the first lookup.
+   *
+   * @return the number of slots in the table, always the number of keys
+   */
+  public int set() {
+    return build().keys.length;
+  }
+
+  private synchronized Table build() {
+    if (table == null) {
+      long[] members = keys.toArray();
+      long seed = 0;
+      Table built;
+      while ((built = Table.build(members, seed)) == null) {
+        seed += GOLDEN;
+      }
+      table = built;
+    }
+    return table;
+  }
+
+  @Override
+  public void report() {
+  }
+
+  /**
+   * @return the keys in hash order, every slot is in use
+   */
+  @Override
+  public long[] getKeys() {
+    Table table = this.table;
+    if (table == null) {
+      table = build();
+    }
+    return table.keys;
+  }
+
+  @Override
+  public synchronized int size() {
+    return keys.size();
+  }
+
+  @Override
+  public synchronized long[] toArray() {
+    return keys.toArray();
+  }
+
+  private static final class Table {
+    final long seed;
+    final long[] pilots;
+    final long[] keys;
+
+    private Table(long seed, long[] pilots, long[] keys) {
+      this.seed = seed;
+      this.pilots = pilots;
+      this.keys = keys;
+    }
+
+    boolean contains(long userid) {
+      long[] keys = this.keys;
+      if (keys.length == 0) {
+        return false;
+      }
+      long hash = mix(userid ^ seed);
+      long pilot = pilots[range(hash, pilots.length)];
+      return keys[slot(hash, pilot, keys.length)] == userid;
+    }
+
+    /**
+     * @return the table or null if some bucket could not be placed with this seed
+     */
+    static Table build(long[] members, long seed) {
+      int n = members.length;
+      int buckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+      long[] hashes = new long[n];
+      // Counting sort the keys by bucket
+      int[] start = new int[buckets + 1];
+      for (int i = 0; i < n; i++) {
+        hashes[i] = mix(members[i] ^ seed);
+        start[range(hashes[i], buckets) + 1]++;
+      }
+      int largest = 0;
+      for (int b = 0; b < buckets; b++) {
+        largest = Math.max(largest, start[b + 1]);
+        start[b + 1] += start[b];
+      }
+      long[] sorted = new long[n];
+      int[] fill = new int[buckets];
+      for (int i = 0; i < n; i++) {
+        int b = range(hashes[i], buckets);
+        sorted[start[b] + fill[b]++] = hashes[i];
+      }
+      // Then the buckets by size, largest first
+      int[] order = new int[buckets];
+      int[] next = new int[largest + 2];
+      for (int b = 0; b < buckets; b++) {
+        next[largest - (start[b + 1] - start[b]) + 1]++;
+      }
+      for (int s = 1; s < next.length; s++) {
+        next[s] += next[s - 1];
+      }
+      for (int b = 0; b < buckets; b++) {
+        order[next[largest - (start[b + 1] - start[b])]++] = b;
+      }
+
+      long[] pilots = new long[buckets];
+      boolean[] taken = new boolean[n];
+      int[] slots = new int[largest];
+      for (int b : order) {
+        int from = start[b];
+        int size = start[b + 1] - from;
+        if (size == 0) {
+          break;
+        }
+        long pilot;
+        int attempt = 0;
+        search:
+        for (; ; attempt++) {
+          if (attempt == MAX_PILOT) {
+            return null;
+          }
+          pilot = pilot(attempt);
+          for (int i = 0; i < size; i++) {
+            int slot = slot(sorted[from + i], pilot, n);
+            if (taken[slot]) {
+              continue search;
+            }
+            for (int j = 0; j < i; j++) {
+              if (slots[j] == slot) {
+                continue search;
+              }
+            }
+            slots[i] = slot;
+          }
+          break;
+        }
+        pilots[b] = pilot;
+        for (int i = 0; i < size; i++) {
+          taken[slots[i]] = true;
+        }
+      }
+
+      Table table = new Table(seed, pilots, new long[n]);
+      for (long member : members) {
+        long hash = mix(member ^ seed);
+        table.keys[slot(hash, pilots[range(hash, buckets)], n)] = member;
+      }
+      return table;
+    }
+
+    /**
+     * One multiply spreads the pilot over the hash so every pilot gives a bucket a different placement.
+     */
+    private static int slot(long hash, long pilot, int n) {
+      return range((hash ^ pilot) * GOLDEN, n);
+    }
+
+    private static long pilot(int pilot) {
+      return mix(pilot * GOLDEN);
+    }
+
+    /**
+     * Maps the high bits of the hash onto [0, n) without a division.
+     */
+    private static int range(long hash, int n) {
+      return (int) (((hash >>> 32) * n) >>> 32);
+    }
+
+    private static long mix(long key) {
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb93fe53cdbd3L;
+      key ^= key >>> 33;
+      return key;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package thefeed;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs timeline queries for a serving layer. Each request gets its own thread, a virtual thread where the
+ * JVM has them (Java 21 and up) and otherwise one from a cached pool, so requests can block on I/O such as
+ * faulting in mapped epochs as cheaply as the JVM allows. The scans themselves run on a fixed pool with
+ * one thread per core, so however many requests are waiting on I/O the CPU-bound work never has more
+ * threads than cores and blocked requests never hold up scans.
+ * <p/>
+ * Make one per process and reuse it instead of creating a pool per run.
+ */
+public class QueryExecutor {
+
+  private final FeedStore store;
+  private final ExecutorService requests;
+  private final ExecutorService scans;
+  private final boolean virtual;
+
+  public QueryExecutor(FeedStore store) {
+    this(store, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param store       the feed to query
+   * @param scanThreads the size of the scan pool
+   */
+  public QueryExecutor(FeedStore store, int scanThreads) {
+    if (scanThreads <= 0) {
+      throw new IllegalArgumentException("Scan threads must be positive: " + scanThreads);
+    }
+    this.store = store;
+    ExecutorService virtualThreads = virtualThreadPerTask();
+    virtual = virtualThreads != null;
+    requests = virtual ? virtualThreads : Executors.newCachedThreadPool();
+    scans = Executors.newFixedThreadPool(scanThreads);
+  }
+
+  /**
+   * @return Executors.newVirtualThreadPerTaskExecutor() if this JVM has it, otherwise null
+   */
+  private static ExecutorService virtualThreadPerTask() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      // Before Java 19
+      return null;
+    } catch (InvocationTargetException e) {
+      // Java 19 and 20 without preview features
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if requests run on virtual threads
+   */
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  public FeedStore store() {
+    return store;
+  }
+
+  /**
+   * Run a request on its own thread. It may block, and should pass any scanning to {@link #scan(Callable)}.
+   */
+  public <T> Future<T> submit(Callable<T> request) {
+    return requests.submit(request);
+  }
+
+  /**
+   * Run CPU-bound work on the scan pool and wait for it, for use from a request.
+   *
+   * @throws ExecutionException if the work threw
+   */
+  public <T> T scan(Callable<T> work) throws InterruptedException, ExecutionException {
+    return scans.submit(work).get();
+  }
+
+  /**
+   * The newest postids from the followed users, computed on the scan pool.
+   *
+   * @see FeedStore#timeline(FollowSet, int)
+   */
+  public Future<long[]> timeline(final FollowSet follows, final int limit) {
+    return submit(new Callable<long[]>() {
+      @Override
+      public long[] call() throws Exception {
+        return scan(new Callable<long[]>() {
+          @Override
+          public long[] call() {
+            return store.timeline(follows, limit);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Stop accepting requests and wait for those running to finish.
+   *
+   * @return false if they didn't finish in time
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    requests.shutdown();
+    boolean finished = requests.awaitTermination(timeout, unit);
+    scans.shutdown();
+    return finished && scans.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,52 @@
+package thefeed;
+
+/**
+ * Chooses how to answer a timeline query. A scan costs about one probe of the follow set per entry until
+ * enough posts have been found, so it wins when the followees post a large share of the feed. Merging the
+ * author index costs a lookup per followee plus a heap operation per post returned, so it wins for users
+ * who follow a handful of accounts. Selectivity is estimated by assuming the followees post as often as
+ * the average author.
+ */
+public class QueryPlanner {
+
+  public enum Plan {
+    SCAN, MERGE
+  }
+
+  // Relative to scanning one entry, from the crossover measured by the Crossover benchmark
+  private static final double LOOKUP_COST = 10;
+  private static final double MERGE_COST = 3;
+
+  private final FeedStore store;
+
+  /**
+   * @param store a feed with an author index
+   */
+  public QueryPlanner(FeedStore store) {
+    if (store.index() == null) {
+      throw new IllegalArgumentException("Feed has no author index");
+    }
+    this.store = store;
+  }
+
+  public Plan plan(FollowSet follows, int limit) {
+    int followees = Math.max(follows.size(), 1);
+    long entries = store.size();
+    int authors = Math.max(store.index().authors(), 1);
+    double selectivity = Math.min(1.0, (double) followees / authors);
+    double scan = Math.min(entries, limit / selectivity);
+    double posts = Math.min(limit, entries * selectivity);
+    double merge = followees * LOOKUP_COST + posts * MERGE_COST * (1 + Math.log(followees) / Math.log(2));
+    return merge < scan ? Plan.MERGE : Plan.SCAN;
+  }
+
+  /**
+   * @return the newest postids from the followed users using the cheaper plan
+   */
+  public long[] timeline(FollowSet follows, int limit) {
+    if (plan(follows, limit) == Plan.MERGE) {
+      return store.index().timeline(follows, limit);
+    }
+    return store.timeline(follows, limit);
+  }
+}
@@ -0,0 +1,73 @@
+package thefeed;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the readers of a feed so the storage of an unlinked epoch is only reused once every reader that
+ * could have reached it has finished, however long its scan takes. Readers register under the current era
+ * in a counter for the era's parity, striped by thread so readers on different cores don't share a cache
+ * line. The writer moves to the next era only once no reader is left under the parity it is about to
+ * reuse, so by the time the era is two past the one an epoch was unlinked in, every reader that was
+ * registered then has exited and later readers can't reach it.
+ */
+final class Readers {
+
+  // Longs between counters, a cache line apart
+  private static final int PAD = 8;
+
+  private final AtomicLong era = new AtomicLong();
+  private final AtomicLongArray counts;
+  private final int mask;
+
+  Readers() {
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors()) {
+      stripes <<= 1;
+    }
+    mask = stripes - 1;
+    counts = new AtomicLongArray(stripes * 2 * PAD);
+  }
+
+  /**
+   * @return the ticket to pass to exit
+   */
+  int enter() {
+    int stripe = (int) Thread.currentThread().getId() & mask;
+    while (true) {
+      long era = this.era.get();
+      int slot = (stripe << 1 | (int) era & 1) * PAD;
+      counts.incrementAndGet(slot);
+      if (this.era.get() == era) {
+        return slot;
+      }
+      // Raced with the writer moving on, register again under the new era
+      counts.decrementAndGet(slot);
+    }
+  }
+
+  void exit(int ticket) {
+    counts.decrementAndGet(ticket);
+  }
+
+  long era() {
+    return era.get();
+  }
+
+  /**
+   * Move to the next era if no reader is registered under its parity. Only called by the writer.
+   *
+   * @return the era now
+   */
+  long advance() {
+    long next = era.get() + 1;
+    int parity = (int) next & 1;
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      if (counts.get((stripe << 1 | parity) * PAD) != 0) {
+        return next - 1;
+      }
+    }
+    era.set(next);
+    return next;
+  }
+}
@@ -0,0 +1,25 @@
+package thefeed;
+
+/**
+ * Decides when the oldest epoch of the feed should expire.
+ */
+public interface RetentionPolicy {
+
+  /**
+   * Keep every epoch.
+   */
+  RetentionPolicy FOREVER = new RetentionPolicy() {
+    @Override
+    public boolean expire(Epoch oldest, int epochs, long now) {
+      return false;
+    }
+  };
+
+  /**
+   * @param oldest the oldest epoch, always sealed
+   * @param epochs the number of epochs in the feed
+   * @param now    the current time in millis
+   * @return true if the oldest epoch should be unlinked
+   */
+  boolean expire(Epoch oldest, int epochs, long now);
+}
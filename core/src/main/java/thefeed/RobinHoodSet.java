@@ -0,0 +1,159 @@
+package thefeed;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing follow set where no key is ever more than MAX_PROBE slots from where it hashes, so that
+ * contains can compare a fixed run of slots without a data dependent loop or early exit. The JIT unrolls
+ * it into straight line code that doesn't mispredict however often lookups miss.
+ * <p/>
+ * Keys are placed Robin Hood style, a key that has travelled further from home takes the slot of one that
+ * hasn't, which keeps displacements short and even. If a key would still end up too far from home the
+ * table doubles. The table has MAX_PROBE extra slots on the end so that probes never wrap.
+ */
+public class RobinHoodSet implements FollowSet {
+
+  static final int MAX_PROBE = 8;
+  private static final long NULL = Long.MIN_VALUE;
+  private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+  private static final double LOAD_FACTOR = 0.5;
+
+  private long[] keys;
+  // Number of bits of hash used to pick the home slot
+  private int bits;
+  private int numEntries;
+
+  public RobinHoodSet(int size) {
+    bits = 1;
+    while ((1 << bits) * LOAD_FACTOR < size) {
+      bits++;
+    }
+    allocate();
+  }
+
+  private void allocate() {
+    keys = new long[(1 << bits) + MAX_PROBE];
+    Arrays.fill(keys, NULL);
+  }
+
+  private int home(long key) {
+    return (int) ((key * GOLDEN) >>> (64 - bits));
+  }
+
+  @Override
+  public boolean contains(long userid) {
+    long[] keys = this.keys;
+    int index = home(userid);
+    boolean found = false;
+    for (int i = 0; i < MAX_PROBE; i++) {
+      found |= keys[index + i] == userid;
+    }
+    // Empty slots hold NULL so it can't be looked up
+    return found & userid != NULL;
+  }
+
+  @Override
+  public boolean add(long userid) {
+    if (userid == NULL || userid == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Reserved userid: " + userid);
+    }
+    if (contains(userid)) {
+      return false;
+    }
+    if (numEntries + 1 > (1 << bits) * LOAD_FACTOR) {
+      grow();
+    }
+    long key = userid;
+    while ((key = place(key)) != NULL) {
+      // A key was left without a slot, everything else is still in place
+      grow();
+    }
+    numEntries++;
+    return true;
+  }
+
+  /**
+   * @return NULL once everything is placed or the key that couldn't be
+   */
+  private long place(long key) {
+    int index = home(key);
+    int distance = 0;
+    while (true) {
+      long resident = keys[index];
+      if (resident == NULL) {
+        keys[index] = key;
+        return NULL;
+      }
+      int residentDistance = index - home(resident);
+      if (residentDistance < distance) {
+        // Take from the rich
+        keys[index] = key;
+        key = resident;
+        distance = residentDistance;
+      }
+      index++;
+      distance++;
+      if (distance == MAX_PROBE) {
+        return key;
+      }
+    }
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    search:
+    while (true) {
+      bits++;
+      allocate();
+      for (long key : oldKeys) {
+        if (key != NULL && place(key) != NULL) {
+          continue search;
+        }
+      }
+      return;
+    }
+  }
+
+  /**
+   * @return the average distance of keys from their home slot
+   */
+  public double displacement() {
+    long total = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != NULL) {
+        total += i - home(keys[i]);
+      }
+    }
+    return numEntries == 0 ? 0 : (double) total / numEntries;
+  }
+
+  @Override
+  public void report() {
+    System.out.println(numEntries + " keys, " + displacement() + " average displacement");
+  }
+
+  /**
+   * @return the table with empty slots set to Long.MIN_VALUE
+   */
+  @Override
+  public long[] getKeys() {
+    return keys;
+  }
+
+  @Override
+  public int size() {
+    return numEntries;
+  }
+
+  @Override
+  public long[] toArray() {
+    long[] result = new long[numEntries];
+    int position = 0;
+    for (long key : keys) {
+      if (key != NULL) {
+        result[position++] = key;
+      }
+    }
+    return result;
+  }
+}
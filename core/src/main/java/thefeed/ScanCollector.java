@@ -0,0 +1,9 @@
+package thefeed;
+
+/**
+ * Receives the entries matched by a scan, newest first. Collectors are not thread safe; give each scanning
+ * thread its own and merge them when the scan completes so nothing is shared on the hot path.
+ */
+public interface ScanCollector {
+  void collect(long userid, long postid);
+}
@@ -0,0 +1,27 @@
+package thefeed;
+
+/**
+ * Strategy for matching the entries of an epoch against a follow set.
+ */
+public interface ScanEngine {
+
+  /**
+   * Calls contains for each entry in turn using the scan built into the epoch.
+   */
+  ScanEngine SCALAR = new ScanEngine() {
+    @Override
+    public int scan(Epoch epoch, FollowSet follows, int limit) {
+      return epoch.scan(follows, limit);
+    }
+  };
+
+  /**
+   * Count the entries of the epoch whose userid is in the follow set.
+   *
+   * @param epoch   the epoch to scan
+   * @param follows the userids to match
+   * @param limit   stop scanning once this many entries have matched
+   * @return the number of matching entries, at most limit
+   */
+  int scan(Epoch epoch, FollowSet follows, int limit);
+}
@@ -0,0 +1,323 @@
+package thefeed;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Scan path metrics: entries scanned, hit rate, and distributions of query latency, entries and epochs
+ * touched per query and hash set probe length. Turn them on with -Dthefeed.metrics=true. ENABLED is a
+ * static final so when it's off the JIT folds every check of it away and the scan loops are exactly as
+ * they were.
+ * <p/>
+ * Threads record into a fixed set of histograms picked by thread id, twice as many sets as cores so that
+ * threads rarely wait on each other, and never more however many threads come and go. Probe lengths are
+ * only recorded for one lookup in 64, picked by a hash of the key so that sampling costs no state.
+ * Reading adds up every set one at a time, so a snapshot taken during scans can be a few queries behind
+ * and slightly inconsistent between fields.
+ */
+public final class ScanMetrics implements ScanMetricsMXBean {
+
+  public static final boolean ENABLED = Boolean.getBoolean("thefeed.metrics");
+
+  public static final String NAME = "thefeed:type=ScanMetrics";
+
+  private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+  // Top bits of the key's hash that must be zero for its lookup to be sampled, one in 64
+  private static final int SAMPLE_BITS = 6;
+
+  private static final Recorder[] recorders = recorders();
+
+  private static Recorder[] recorders() {
+    int stripes = 1;
+    while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+      stripes <<= 1;
+    }
+    Recorder[] recorders = new Recorder[stripes];
+    for (int i = 0; i < stripes; i++) {
+      recorders[i] = new Recorder();
+    }
+    return recorders;
+  }
+
+  private static Recorder recorder() {
+    return recorders[(int) Thread.currentThread().getId() & recorders.length - 1];
+  }
+
+  private static class Recorder {
+    final Histogram latency = new Histogram();
+    final Histogram entries = new Histogram();
+    final Histogram epochs = new Histogram();
+    final Histogram probes = new Histogram();
+    long hits;
+    long nanos;
+  }
+
+  /**
+   * Record a query. Only call when ENABLED.
+   *
+   * @param start   System.nanoTime() when the query started
+   * @param entries the entries in the epochs scanned
+   * @param epochs  the number of epochs scanned, not counting those skipped by their summaries
+   * @param hits    the number of matches
+   */
+  static void query(long start, long entries, int epochs, int hits) {
+    record(System.nanoTime() - start, entries, epochs, hits);
+  }
+
+  private static void record(long nanos, long entries, int epochs, int hits) {
+    Recorder recorder = recorder();
+    synchronized (recorder) {
+      recorder.latency.record(nanos);
+      recorder.entries.record(entries);
+      recorder.epochs.record(epochs);
+      recorder.hits += hits;
+      recorder.nanos += nanos;
+    }
+  }
+
+  /**
+   * Counts the epochs and entries one query visits and records it when it ends. Only create when ENABLED.
+   */
+  static final class Query {
+    private static final ScanCollector NONE = new ScanCollector() {
+      @Override
+      public void collect(long userid, long postid) {
+      }
+    };
+
+    private final long start = System.nanoTime();
+    private long entries;
+    private int epochs;
+    // Where an engine reached the limit, how far it got is only worked out once the query has been timed
+    private Epoch last;
+    private FollowSet follows;
+    private int wanted;
+
+    /**
+     * Scan the epoch newest first for up to wanted matches, as Epoch.scan(follows, wanted, collector) does,
+     * counting only the entries up to the last match.
+     *
+     * @return the number of matching entries
+     */
+    int scan(Epoch epoch, FollowSet follows, int wanted, ScanCollector collector) {
+      Counter counter = new Counter(collector);
+      int size = epoch.size();
+      entries(size - epoch.scan(follows, size, wanted, counter));
+      return counter.count;
+    }
+
+    /**
+     * An epoch an engine scanned newest first for up to wanted matches, which doesn't say where it stopped.
+     *
+     * @param found the matches the engine returned
+     */
+    void epoch(Epoch epoch, FollowSet follows, int wanted, int found) {
+      if (found < wanted) {
+        entries(epoch.size());
+      } else {
+        epochs++;
+        last = epoch;
+        this.follows = follows;
+        this.wanted = wanted;
+      }
+    }
+
+    /**
+     * An epoch of which visited entries were scanned.
+     */
+    void entries(int visited) {
+      epochs++;
+      entries += visited;
+    }
+
+    /**
+     * Record the query. Call while still entered in the feed.
+     */
+    void end(int hits) {
+      long nanos = System.nanoTime() - start;
+      if (last != null) {
+        int size = last.size();
+        entries += size - last.scan(follows, size, wanted, NONE);
+      }
+      record(nanos, entries, epochs, hits);
+    }
+  }
+
+  private static class Counter implements ScanCollector {
+    private final ScanCollector collector;
+    int count;
+
+    Counter(ScanCollector collector) {
+      this.collector = collector;
+    }
+
+    @Override
+    public void collect(long userid, long postid) {
+      collector.collect(userid, postid);
+      count++;
+    }
+  }
+
+  /**
+   * @return true if the probe length of a lookup of the key should be recorded
+   */
+  public static boolean sampled(long key) {
+    return (key * GOLDEN) >>> 64 - SAMPLE_BITS == 0;
+  }
+
+  /**
+   * Record the number of slots a sampled hash set lookup compared. Only call when ENABLED.
+   */
+  public static void probe(int length) {
+    Recorder recorder = recorder();
+    synchronized (recorder) {
+      recorder.probes.record(length);
+    }
+  }
+
+  /**
+   * @return the metrics of all threads so far
+   */
+  public static Snapshot snapshot() {
+    Snapshot snapshot = new Snapshot();
+    for (Recorder recorder : recorders) {
+      synchronized (recorder) {
+        snapshot.latency.add(recorder.latency);
+        snapshot.entries.add(recorder.entries);
+        snapshot.epochs.add(recorder.epochs);
+        snapshot.probes.add(recorder.probes);
+        snapshot.hits += recorder.hits;
+        snapshot.nanos += recorder.nanos;
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * Register the metrics with the platform MBean server as {@link #NAME}, if they aren't already.
+   */
+  public static synchronized void register() {
+    try {
+      ObjectName name = new ObjectName(NAME);
+      if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new ScanMetrics(), name);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Couldn't register " + NAME, e);
+    }
+  }
+
+  public static class Snapshot {
+    /** Nanoseconds per query */
+    public final Histogram latency = new Histogram();
+    /** Entries in the epochs scanned per query */
+    public final Histogram entries = new Histogram();
+    /** Epochs scanned per query */
+    public final Histogram epochs = new Histogram();
+    /** Slots compared per sampled hash set lookup */
+    public final Histogram probes = new Histogram();
+    public long hits;
+    public long nanos;
+
+    public long queries() {
+      return latency.count();
+    }
+
+    public long entriesScanned() {
+      return entries.total();
+    }
+
+    /**
+     * @return entries scanned per second of query time
+     */
+    public double entriesPerSecond() {
+      return nanos == 0 ? 0 : entriesScanned() * 1e9 / nanos;
+    }
+
+    /**
+     * @return the fraction of entries scanned that matched
+     */
+    public double hitRate() {
+      long scanned = entriesScanned();
+      return scanned == 0 ? 0 : (double) hits / scanned;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d queries, %.0f entries/s, hit rate %.4f%n  latency ns: %s%n  entries: %s%n"
+          + "  epochs: %s%n  probes: %s", queries(), entriesPerSecond(), hitRate(), latency, entries, epochs,
+          probes);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return ENABLED;
+  }
+
+  @Override
+  public long getQueries() {
+    return snapshot().queries();
+  }
+
+  @Override
+  public long getEntriesScanned() {
+    return snapshot().entriesScanned();
+  }
+
+  @Override
+  public double getEntriesPerSecond() {
+    return snapshot().entriesPerSecond();
+  }
+
+  @Override
+  public double getHitRate() {
+    return snapshot().hitRate();
+  }
+
+  @Override
+  public double getLatencyMeanMicros() {
+    return snapshot().latency.mean() / 1000;
+  }
+
+  @Override
+  public long getLatencyP99Micros() {
+    return snapshot().latency.percentile(99) / 1000;
+  }
+
+  @Override
+  public long getLatencyMaxMicros() {
+    return snapshot().latency.max() / 1000;
+  }
+
+  @Override
+  public double getEntriesPerQueryMean() {
+    return snapshot().entries.mean();
+  }
+
+  @Override
+  public long getEntriesPerQueryP99() {
+    return snapshot().entries.percentile(99);
+  }
+
+  @Override
+  public double getEpochsPerQueryMean() {
+    return snapshot().epochs.mean();
+  }
+
+  @Override
+  public long getEpochsPerQueryP99() {
+    return snapshot().epochs.percentile(99);
+  }
+
+  @Override
+  public double getProbeLengthMean() {
+    return snapshot().probes.mean();
+  }
+
+  @Override
+  public long getProbeLengthP99() {
+    return snapshot().probes.percentile(99);
+  }
+}
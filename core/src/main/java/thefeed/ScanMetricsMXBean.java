@@ -0,0 +1,37 @@
+package thefeed;
+
+/**
+ * The scan metrics as seen over JMX, all since the JVM started.
+ *
+ * @see ScanMetrics#register()
+ */
+public interface ScanMetricsMXBean {
+
+  boolean isEnabled();
+
+  long getQueries();
+
+  long getEntriesScanned();
+
+  double getEntriesPerSecond();
+
+  double getHitRate();
+
+  double getLatencyMeanMicros();
+
+  long getLatencyP99Micros();
+
+  long getLatencyMaxMicros();
+
+  double getEntriesPerQueryMean();
+
+  long getEntriesPerQueryP99();
+
+  double getEpochsPerQueryMean();
+
+  long getEpochsPerQueryP99();
+
+  double getProbeLengthMean();
+
+  long getProbeLengthP99();
+}
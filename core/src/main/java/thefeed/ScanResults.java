@@ -0,0 +1,61 @@
+package thefeed;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of the postids matched by a scan in the order they were found.
+ */
+public class ScanResults implements ScanCollector {
+
+  private long[] postids;
+  private int size;
+
+  public ScanResults() {
+    this(16);
+  }
+
+  public ScanResults(int capacity) {
+    postids = new long[Math.max(capacity, 1)];
+  }
+
+  @Override
+  public void collect(long userid, long postid) {
+    if (size == postids.length) {
+      postids = Arrays.copyOf(postids, size * 2);
+    }
+    postids[size++] = postid;
+  }
+
+  /**
+   * Append the postids of other until this holds limit of them.
+   */
+  public void merge(ScanResults other, int limit) {
+    int count = Math.min(other.size, limit - size);
+    if (count > 0) {
+      if (size + count > postids.length) {
+        postids = Arrays.copyOf(postids, Math.max(size + count, size * 2));
+      }
+      System.arraycopy(other.postids, 0, postids, size, count);
+      size += count;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException(index + " >= " + size);
+    }
+    return postids[index];
+  }
+
+  public long[] toArray() {
+    return Arrays.copyOf(postids, size);
+  }
+
+  public void clear() {
+    size = 0;
+  }
+}
@@ -0,0 +1,279 @@
+package thefeed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent timeline requests into shared scans. A request waits at most the window for others
+ * to arrive, then everything queued, up to the largest batch, is scanned together by one BatchScan so the
+ * feed is streamed from memory once per group rather than once per request. Under load each scan serves
+ * many requests, which is what lets reads scale past memory bandwidth; when idle a request only pays the
+ * window in extra latency.
+ * <p/>
+ * A single thread forms the groups and hands each to the executor once one of the scan slots is free, so
+ * while every slot is busy the next group keeps growing instead of queuing behind the running scans. The
+ * busier the feed the larger the groups.
+ */
+public class SharedScanScheduler {
+
+  private final FeedStore store;
+  private final Executor executor;
+  private final long window;
+  private final int maxBatch;
+  private final Semaphore slots;
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+  private final Thread scheduler;
+  private final AtomicLong batches = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * A timeline that is completed by the scan of its group, or cancelled.
+   */
+  private static class Request implements Future<long[]> {
+    final FollowSet follows;
+    final int limit;
+    private final CountDownLatch done = new CountDownLatch(1);
+    // Written once before done is counted down
+    private long[] timeline;
+    private Throwable failure;
+    private boolean cancelled;
+
+    Request(FollowSet follows, int limit) {
+      this.follows = follows;
+      this.limit = limit;
+    }
+
+    void set(long[] timeline) {
+      complete(timeline, null, false);
+    }
+
+    void fail(Throwable t) {
+      complete(null, t, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return complete(null, null, true);
+    }
+
+    /**
+     * @return false if the request was already done
+     */
+    private synchronized boolean complete(long[] timeline, Throwable failure, boolean cancelled) {
+      if (isDone()) {
+        return false;
+      }
+      this.timeline = timeline;
+      this.failure = failure;
+      this.cancelled = cancelled;
+      done.countDown();
+      return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return done.getCount() == 0;
+    }
+
+    @Override
+    public long[] get() throws InterruptedException, ExecutionException {
+      done.await();
+      return result();
+    }
+
+    @Override
+    public long[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+        TimeoutException {
+      if (!done.await(timeout, unit)) {
+        throw new TimeoutException();
+      }
+      return result();
+    }
+
+    private synchronized long[] result() throws ExecutionException {
+      if (cancelled) {
+        throw new CancellationException();
+      }
+      if (failure != null) {
+        throw new ExecutionException(failure);
+      }
+      return timeline;
+    }
+  }
+
+  /**
+   * @param store       the feed to scan
+   * @param executor    runs the shared scans
+   * @param parallelism the most scans to run at once, at most the executor's threads
+   * @param window      how long the first request of a group waits for others
+   * @param unit        the unit of the window
+   * @param maxBatch    the most requests a single scan serves
+   */
+  public SharedScanScheduler(FeedStore store, Executor executor, int parallelism, long window,
+                             TimeUnit unit, int maxBatch) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    if (window < 0) {
+      throw new IllegalArgumentException("Window must not be negative: " + window);
+    }
+    if (maxBatch <= 0) {
+      throw new IllegalArgumentException("Batch must be positive: " + maxBatch);
+    }
+    this.store = store;
+    this.executor = executor;
+    this.window = unit.toNanos(window);
+    this.maxBatch = maxBatch;
+    slots = new Semaphore(parallelism);
+    scheduler = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        schedule();
+      }
+    }, "shared-scan-scheduler");
+    scheduler.setDaemon(true);
+    scheduler.start();
+  }
+
+  /**
+   * Queue a timeline request to be served by the next shared scan.
+   *
+   * @param follows the userids to match
+   * @param limit   the most postids to return
+   * @return the matching postids newest first, as FeedStore.timeline would return them
+   */
+  public Future<long[]> submit(FollowSet follows, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit must not be negative: " + limit);
+    }
+    if (closed) {
+      throw new IllegalStateException("Scheduler is closed");
+    }
+    Request request = new Request(follows, limit);
+    queue.add(request);
+    if (closed) {
+      // Lost a race with close, which may have drained the queue before the add
+      request.cancel(false);
+    }
+    return request;
+  }
+
+  /**
+   * @return the number of shared scans run so far
+   */
+  public long batches() {
+    return batches.get();
+  }
+
+  /**
+   * Stop forming groups and cancel the requests that haven't been scanned. Scans already handed to the
+   * executor still complete.
+   */
+  public void close() {
+    closed = true;
+    scheduler.interrupt();
+    List<Request> pending = new ArrayList<Request>();
+    queue.drainTo(pending);
+    for (Request request : pending) {
+      request.cancel(false);
+    }
+  }
+
+  private void schedule() {
+    List<Request> group = new ArrayList<Request>();
+    try {
+      while (!closed) {
+        group.add(queue.take());
+        long deadline = System.nanoTime() + window;
+        while (group.size() < maxBatch) {
+          long wait = deadline - System.nanoTime();
+          Request next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : null;
+          if (next == null) {
+            break;
+          }
+          group.add(next);
+        }
+        slots.acquire();
+        // Everything that arrived while waiting for a slot joins
+        queue.drainTo(group, maxBatch - group.size());
+        final List<Request> scanned = group;
+        group = new ArrayList<Request>();
+        try {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                scan(scanned);
+              } finally {
+                slots.release();
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          slots.release();
+          fail(scanned, e);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Closed part way through forming a group
+      for (Request request : group) {
+        request.cancel(false);
+      }
+    }
+  }
+
+  private void scan(List<Request> group) {
+    List<Request> live = new ArrayList<Request>(group.size());
+    int limit = 0;
+    for (Request request : group) {
+      if (!request.isDone()) {
+        live.add(request);
+        limit = Math.max(limit, request.limit);
+      }
+    }
+    if (live.isEmpty()) {
+      return;
+    }
+    try {
+      FollowSet[] follows = new FollowSet[live.size()];
+      for (int k = 0; k < follows.length; k++) {
+        follows[k] = live.get(k).follows;
+      }
+      // A timeline with a smaller limit is a prefix of the one with the largest
+      long[][] timelines = new BatchScan(follows).timelines(store, limit);
+      batches.incrementAndGet();
+      for (int k = 0; k < follows.length; k++) {
+        Request request = live.get(k);
+        long[] timeline = timelines[k];
+        request.set(timeline.length > request.limit ? Arrays.copyOf(timeline, request.limit) : timeline);
+      }
+    } catch (Throwable t) {
+      // Errors too, or the requests would wait forever
+      fail(live, t);
+    }
+  }
+
+  private static void fail(List<Request> requests, Throwable t) {
+    for (Request request : requests) {
+      request.fail(t);
+    }
+  }
+}
@@ -15,6 +15,7 @@ import java.util.concurrent.ExecutionException;
 public class SingleThreaded {
 
   private static final int FOLLOWEES = 1000;
+  private static final int QUERIES = 1000;
 
   public static void main(String[] args) throws ExecutionException, InterruptedException {
     Random r = new Random();
@@ -22,53 +23,33 @@ public class SingleThreaded {
     for (int i = 0; i < FOLLOWEES; i++) {
       comparisons.add((long) r.nextInt(RANGE));
     }
-    LinkedFeed head = null;
-    LinkedFeed current = null;
-    for (int j = 0; j < BLOCKS; j++) {
-      long[] feed = new long[(TIMES / BLOCKS * 2)];
-      LinkedFeed tmp = current;
-      current = new LinkedFeed(feed, current);
-      current.next = tmp;
-      head = current;
-      for (int i = 0; i < TIMES / BLOCKS * 2; i += 2) {
-        feed[i] = r.nextInt(RANGE);
-      }
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, TIMES / BLOCKS);
+    for (int i = 0; i < TIMES; i++) {
+      store.append(r.nextInt(RANGE), i);
     }
     System.out.println("TOTAL,HITS");
     for (int i = 0; i < 3; i++) {
       long start = System.currentTimeMillis();
-      int hits = 0;
-      for (current = head; current != null; current = current.next) {
-        long[] value = current.value;
-        for (int j = 0; j < TIMES / BLOCKS * 2; j += 2) {
-          if (comparisons.contains(value[j])) {
-            hits++;
-          }
-        }
-      }
+      int hits = store.scan(comparisons, Integer.MAX_VALUE);
       long result = TIMES / (System.currentTimeMillis() - start);
       System.out.println(result + "," + hits);
     }
+    // A home timeline only needs the newest page of posts
+    System.out.println("LIMIT,MICROS,POSTS");
+    for (int limit : new int[]{20, 200, 2000}) {
+      for (int i = 0; i < 3; i++) {
+        long[] posts = null;
+        long start = System.currentTimeMillis();
+        for (int j = 0; j < QUERIES; j++) {
+          posts = store.timeline(comparisons, limit);
+        }
+        long micros = (System.currentTimeMillis() - start) * 1000 / QUERIES;
+        System.out.println(limit + "," + micros + "," + posts.length);
+      }
+    }
   }
 
   private static int RANGE = 100000;
   private static int BLOCKS = 10;
   private static int TIMES = 30000000;
-
-  /**
-   * We create the feed by linking together reverse chronological epochs of entries.
-   * <p/>
-   * User: sam
-   * Date: 5/22/11
-   * Time: 2:01 PM
-   */
-  private static class LinkedFeed {
-    long[] value;
-    LinkedFeed next;
-
-    public LinkedFeed(long[] value, LinkedFeed next) {
-      this.value = value;
-      this.next = next;
-    }
-  }
 }
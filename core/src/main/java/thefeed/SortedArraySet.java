@@ -0,0 +1,223 @@
+package thefeed;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Follow set for a handful of followees: the userids sorted in an array just large enough to hold them.
+ * Small sets are searched linearly, which for a few cache lines beats hashing, and larger ones by binary
+ * search. Adding is linear so build it from all of the userids at once where possible.
+ * <p/>
+ * A whole batch of userids can be tested at once with containsAll, which gallops from where the previous
+ * userid was found, or intersected with a sorted batch by intersect, which gallops through the longer of
+ * the two so it costs about the shorter one's length times the log of the gap between matches.
+ */
+public class SortedArraySet implements FollowSet {
+
+  // At or below this many userids a linear search beats a binary one
+  private static final int LINEAR = 16;
+  // Intersections gallop through the longer array once it is this many times the length of the shorter
+  private static final int MERGE = 8;
+
+  private long[] userids;
+  private int size;
+
+  public SortedArraySet() {
+    userids = new long[4];
+  }
+
+  /**
+   * @param userids the followees, need not be sorted or distinct
+   */
+  public SortedArraySet(long[] userids) {
+    long[] sorted = userids.clone();
+    Arrays.sort(sorted);
+    if (sorted.length > 0) {
+      // Sorted so the reserved userids could only be at the ends
+      reserved(sorted[0]);
+      reserved(sorted[sorted.length - 1]);
+    }
+    int distinct = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    this.userids = Arrays.copyOf(sorted, distinct);
+    size = distinct;
+  }
+
+  @Override
+  public boolean contains(long userid) {
+    long[] userids = this.userids;
+    int size = this.size;
+    if (size <= LINEAR) {
+      // Stopping early at a larger userid would be a branch that's hard to predict
+      for (int i = 0; i < size; i++) {
+        if (userids[i] == userid) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return Arrays.binarySearch(userids, 0, size, userid) >= 0;
+  }
+
+  /**
+   * Test a batch of userids, fastest when they are sorted ascending.
+   *
+   * @param batch  the userids to test
+   * @param length the number of userids in the batch
+   * @param out    bit i is set if batch[i] is in the set
+   * @return the number of userids in the set
+   */
+  public int containsAll(long[] batch, int length, BitSet out) {
+    int found = 0;
+    int position = 0;
+    for (int i = 0; i < length && size > 0; i++) {
+      position = gallop(userids, size, position, batch[i]);
+      if (position < size && userids[position] == batch[i]) {
+        out.set(i);
+        found++;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Intersect with a sorted batch of distinct userids by galloping through whichever of the two is longer
+   * for each userid of the shorter.
+   *
+   * @param sorted the userids to test in ascending order
+   * @param length the number of userids in the batch
+   * @param out    bit i is set if sorted[i] is in the set
+   * @return the number of userids in the set
+   */
+  public int intersect(long[] sorted, int length, BitSet out) {
+    if (length < size * MERGE && size < length * MERGE) {
+      return merge(sorted, length, out);
+    }
+    if (length <= size) {
+      return containsAll(sorted, length, out);
+    }
+    int found = 0;
+    int position = 0;
+    for (int i = 0; i < size && position < length; i++) {
+      position = gallop(sorted, length, position, userids[i]);
+      if (position < length && sorted[position] == userids[i]) {
+        out.set(position);
+        found++;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Plain merge for when the two are close enough in length that galloping would take as many steps.
+   */
+  private int merge(long[] sorted, int length, BitSet out) {
+    long[] userids = this.userids;
+    int size = this.size;
+    int found = 0;
+    int i = 0;
+    int j = 0;
+    while (i < length && j < size) {
+      long a = sorted[i];
+      long b = userids[j];
+      if (a == b) {
+        out.set(i);
+        found++;
+      }
+      // Advance whichever is behind, both when they're equal
+      i += a <= b ? 1 : 0;
+      j += b <= a ? 1 : 0;
+    }
+    return found;
+  }
+
+  /**
+   * @return the index of the first of the sorted values at or above the value, searching out from position
+   */
+  private static int gallop(long[] values, int size, int position, long value) {
+    int low;
+    int high;
+    if (position < size && values[position] < value) {
+      // Gallop forward, values[low] < value
+      low = position;
+      int step = 1;
+      high = position + 1;
+      while (high < size && values[high] < value) {
+        low = high;
+        step <<= 1;
+        high = low + step;
+      }
+      low++;
+      high = Math.min(high, size);
+    } else {
+      // Gallop back, value <= values[high] if there is one
+      high = position;
+      int step = 1;
+      low = position - 1;
+      while (low >= 0 && values[low] >= value) {
+        high = low;
+        step <<= 1;
+        low = high - step;
+      }
+      low = Math.max(low + 1, 0);
+    }
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public boolean add(long userid) {
+    reserved(userid);
+    int index = Arrays.binarySearch(userids, 0, size, userid);
+    if (index >= 0) {
+      return false;
+    }
+    index = -index - 1;
+    if (size == userids.length) {
+      userids = Arrays.copyOf(userids, Math.max(4, size * 2));
+    }
+    System.arraycopy(userids, index, userids, index + 1, size - index);
+    userids[index] = userid;
+    size++;
+    return true;
+  }
+
+  private static void reserved(long userid) {
+    if (userid == Long.MIN_VALUE || userid == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Reserved userid: " + userid);
+    }
+  }
+
+  @Override
+  public void report() {
+  }
+
+  /**
+   * @return the userids in ascending order, the same as toArray
+   */
+  @Override
+  public long[] getKeys() {
+    return toArray();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public long[] toArray() {
+    return Arrays.copyOf(userids, size);
+  }
+}
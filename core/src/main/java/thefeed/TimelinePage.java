@@ -0,0 +1,38 @@
+package thefeed;
+
+/**
+ * A page of a timeline and the cursor to fetch the page after it.
+ */
+public class TimelinePage {
+
+  /**
+   * Cursor returned once the end of the feed has been reached.
+   */
+  public static final long END = -1;
+
+  private final long[] postids;
+  private final long cursor;
+
+  public TimelinePage(long[] postids, long cursor) {
+    this.postids = postids;
+    this.cursor = cursor;
+  }
+
+  /**
+   * @return the postids on this page newest first
+   */
+  public long[] postids() {
+    return postids;
+  }
+
+  /**
+   * @return an opaque cursor that resumes the scan after this page
+   */
+  public long cursor() {
+    return cursor;
+  }
+
+  public boolean hasMore() {
+    return cursor != END;
+  }
+}
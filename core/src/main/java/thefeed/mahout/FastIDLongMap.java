@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thefeed.mahout;
+
+import java.util.Arrays;
+
+/**
+ * Map from long ids to primitive long values with the same linear probing, power of two table as
+ * {@link FastIDSet2}, so lookups while scanning never box or allocate.
+ *
+ * @see FastIDMap
+ */
+public final class FastIDLongMap {
+
+  private static final double ALLOWED_LOAD_FACTOR = 1.5;
+
+  /** Dummy object used to represent a key that has been removed. */
+  private static final long REMOVED = Long.MAX_VALUE;
+  private static final long NULL = Long.MIN_VALUE;
+
+  private long[] keys;
+  private long[] values;
+  private final long missing;
+  private int numEntries;
+  private int numSlotsUsed;
+  private int mask;
+
+  /**
+   * @param size    expected number of entries
+   * @param missing returned by {@link #get(long)} for keys that are not in the map
+   */
+  public FastIDLongMap(int size, long missing) {
+    this.missing = missing;
+    allocate(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * Math.max(size, 2))));
+  }
+
+  public FastIDLongMap(int size) {
+    this(size, 0);
+  }
+
+  private void allocate(int hashSize) {
+    keys = new long[hashSize];
+    values = new long[hashSize];
+    mask = hashSize - 1;
+    Arrays.fill(keys, NULL);
+  }
+
+  /**
+   * @see FastIDSet2#contains(long)
+   */
+  private int find(long key) {
+    long[] keys = this.keys;
+    int mask = this.mask;
+    int index = (int) key & mask;
+    long currentKey = keys[index];
+    while ((key != currentKey) && (currentKey != NULL)) { // note: true when currentKey == REMOVED
+      index = (index + 1) & mask;
+      currentKey = keys[index];
+    }
+    return index;
+  }
+
+  public boolean containsKey(long key) {
+    return (key != NULL) && (key != REMOVED) && (keys[find(key)] != NULL);
+  }
+
+  /**
+   * @return the value for the key or the missing value given to the constructor
+   */
+  public long get(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      return missing;
+    }
+    int index = find(key);
+    return keys[index] == NULL ? missing : values[index];
+  }
+
+  /**
+   * @return the previous value for the key or the missing value if there was none
+   */
+  public long put(long key, long value) {
+    if ((key == NULL) || (key == REMOVED)) {
+      throw new IllegalArgumentException("Reserved key: " + key);
+    }
+    // If less than half the slots are open, let's clear it up
+    if (numSlotsUsed * ALLOWED_LOAD_FACTOR >= keys.length) {
+      // If over half the slots used are actual entries, let's grow
+      if (numEntries * ALLOWED_LOAD_FACTOR >= numSlotsUsed) {
+        rehash(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * keys.length)));
+      } else {
+        // Otherwise just rehash to clear REMOVED entries and don't grow
+        rehash();
+      }
+    }
+    int index = find(key);
+    long found = keys[index];
+    if (found == key) {
+      long previous = values[index];
+      values[index] = value;
+      return previous;
+    }
+    // assert found == NULL
+    keys[index] = key;
+    values[index] = value;
+    numEntries++;
+    numSlotsUsed++;
+    return missing;
+  }
+
+  /**
+   * Add the delta to the value for the key, starting from the missing value.
+   *
+   * @return the new value
+   */
+  public long increment(long key, long delta) {
+    if ((key != NULL) && (key != REMOVED)) {
+      int index = find(key);
+      if (keys[index] == key) {
+        return values[index] += delta;
+      }
+    }
+    put(key, missing + delta);
+    return missing + delta;
+  }
+
+  /**
+   * @return the removed value or the missing value if the key was not in the map
+   */
+  public long remove(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      return missing;
+    }
+    int index = find(key);
+    if (keys[index] == NULL) {
+      return missing;
+    }
+    keys[index] = REMOVED;
+    numEntries--;
+    return values[index];
+  }
+
+  public int size() {
+    return numEntries;
+  }
+
+  public boolean isEmpty() {
+    return numEntries == 0;
+  }
+
+  public long[] keys() {
+    long[] result = new long[numEntries];
+    for (int i = 0, position = 0; i < result.length; i++) {
+      while ((keys[position] == NULL) || (keys[position] == REMOVED)) {
+        position++;
+      }
+      result[i] = keys[position++];
+    }
+    return result;
+  }
+
+  public void clear() {
+    numEntries = 0;
+    numSlotsUsed = 0;
+    Arrays.fill(keys, NULL);
+  }
+
+  public void rehash() {
+    rehash(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * Math.max(numEntries, 2))));
+  }
+
+  private void rehash(int newHashSize) {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    numEntries = 0;
+    numSlotsUsed = 0;
+    allocate(newHashSize);
+    int length = oldKeys.length;
+    for (int i = 0; i < length; i++) {
+      long key = oldKeys[i];
+      if ((key != NULL) && (key != REMOVED)) {
+        put(key, oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (isEmpty()) {
+      return "{}";
+    }
+    StringBuilder result = new StringBuilder();
+    result.append('{');
+    for (int i = 0; i < keys.length; i++) {
+      long key = keys[i];
+      if ((key != NULL) && (key != REMOVED)) {
+        result.append(key).append('=').append(values[i]).append(',');
+      }
+    }
+    result.setCharAt(result.length() - 1, '}');
+    return result.toString();
+  }
+}
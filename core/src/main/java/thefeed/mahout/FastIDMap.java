@@ -0,0 +1,199 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package thefeed.mahout;
+
+import java.util.Arrays;
+
+/**
+ * Map from long ids to objects with the same linear probing, power of two table as {@link FastIDSet2}, so
+ * the keys are never boxed.
+ *
+ * @see FastIDLongMap
+ */
+public final class FastIDMap<V> {
+
+  private static final double ALLOWED_LOAD_FACTOR = 1.5;
+
+  /** Dummy object used to represent a key that has been removed. */
+  private static final long REMOVED = Long.MAX_VALUE;
+  private static final long NULL = Long.MIN_VALUE;
+
+  private long[] keys;
+  private V[] values;
+  private int numEntries;
+  private int numSlotsUsed;
+  private int mask;
+
+  public FastIDMap() {
+    this(2);
+  }
+
+  public FastIDMap(int size) {
+    allocate(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * Math.max(size, 2))));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void allocate(int hashSize) {
+    keys = new long[hashSize];
+    values = (V[]) new Object[hashSize];
+    mask = hashSize - 1;
+    Arrays.fill(keys, NULL);
+  }
+
+  /**
+   * @see FastIDSet2#contains(long)
+   */
+  private int find(long key) {
+    long[] keys = this.keys;
+    int mask = this.mask;
+    int index = (int) key & mask;
+    long currentKey = keys[index];
+    while ((key != currentKey) && (currentKey != NULL)) { // note: true when currentKey == REMOVED
+      index = (index + 1) & mask;
+      currentKey = keys[index];
+    }
+    return index;
+  }
+
+  public boolean containsKey(long key) {
+    return (key != NULL) && (key != REMOVED) && (keys[find(key)] != NULL);
+  }
+
+  /**
+   * @return the value for the key or null if there is none
+   */
+  public V get(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      return null;
+    }
+    return values[find(key)];
+  }
+
+  /**
+   * @return the previous value for the key or null if there was none
+   */
+  public V put(long key, V value) {
+    if ((key == NULL) || (key == REMOVED)) {
+      throw new IllegalArgumentException("Reserved key: " + key);
+    }
+    if (value == null) {
+      throw new IllegalArgumentException("Null value for key: " + key);
+    }
+    // If less than half the slots are open, let's clear it up
+    if (numSlotsUsed * ALLOWED_LOAD_FACTOR >= keys.length) {
+      // If over half the slots used are actual entries, let's grow
+      if (numEntries * ALLOWED_LOAD_FACTOR >= numSlotsUsed) {
+        rehash(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * keys.length)));
+      } else {
+        // Otherwise just rehash to clear REMOVED entries and don't grow
+        rehash();
+      }
+    }
+    int index = find(key);
+    long found = keys[index];
+    V previous = values[index];
+    if (found != key) {
+      // assert found == NULL
+      keys[index] = key;
+      numEntries++;
+      numSlotsUsed++;
+    }
+    values[index] = value;
+    return previous;
+  }
+
+  /**
+   * @return the removed value or null if the key was not in the map
+   */
+  public V remove(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      return null;
+    }
+    int index = find(key);
+    if (keys[index] == NULL) {
+      return null;
+    }
+    V previous = values[index];
+    keys[index] = REMOVED;
+    values[index] = null;
+    numEntries--;
+    return previous;
+  }
+
+  public int size() {
+    return numEntries;
+  }
+
+  public boolean isEmpty() {
+    return numEntries == 0;
+  }
+
+  public long[] keys() {
+    long[] result = new long[numEntries];
+    for (int i = 0, position = 0; i < result.length; i++) {
+      while ((keys[position] == NULL) || (keys[position] == REMOVED)) {
+        position++;
+      }
+      result[i] = keys[position++];
+    }
+    return result;
+  }
+
+  public void clear() {
+    numEntries = 0;
+    numSlotsUsed = 0;
+    Arrays.fill(keys, NULL);
+    Arrays.fill(values, null);
+  }
+
+  public void rehash() {
+    rehash(FastIDSet2.nextPowerOfTwo((int) (ALLOWED_LOAD_FACTOR * Math.max(numEntries, 2))));
+  }
+
+  private void rehash(int newHashSize) {
+    long[] oldKeys = keys;
+    V[] oldValues = values;
+    numEntries = 0;
+    numSlotsUsed = 0;
+    allocate(newHashSize);
+    int length = oldKeys.length;
+    for (int i = 0; i < length; i++) {
+      long key = oldKeys[i];
+      if ((key != NULL) && (key != REMOVED)) {
+        put(key, oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    if (isEmpty()) {
+      return "{}";
+    }
+    StringBuilder result = new StringBuilder();
+    result.append('{');
+    for (int i = 0; i < keys.length; i++) {
+      long key = keys[i];
+      if ((key != NULL) && (key != REMOVED)) {
+        result.append(key).append('=').append(values[i]).append(',');
+      }
+    }
+    result.setCharAt(result.length() - 1, '}');
+    return result.toString();
+  }
+}
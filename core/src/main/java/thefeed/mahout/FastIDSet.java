@@ -18,23 +18,35 @@
 package thefeed.mahout;
 
 import thefeed.FollowSet;
+import thefeed.ScanMetrics;
 
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @see FastByIDMap
  */
 public final class FastIDSet implements FollowSet {
 
+  /**
+   * Print how full this set is and how many slots a lookup of each of its keys compares.
+   */
   @Override
   public void report() {
-    System.out.println(total + " " + collisions);
+    long probes = 0;
+    int longest = 0;
+    int hashSize = keys.length;
+    for (int slot = 0; slot < hashSize; slot++) {
+      long key = keys[slot];
+      if ((key != NULL) && (key != REMOVED)) {
+        int length = probes(key, slot);
+        probes += length;
+        longest = Math.max(longest, length);
+      }
+    }
+    System.out.println(String.format("%d keys in %d slots, probes mean %.2f max %d", numEntries, hashSize,
+        numEntries == 0 ? 0 : (double) probes / numEntries, longest));
   }
 
-  public AtomicInteger collisions = new AtomicInteger(0);
-  public AtomicInteger total = new AtomicInteger(0);
-
   private static final double ALLOWED_LOAD_FACTOR = 1.5;
   
   /** Dummy object used to represent a key that has been removed. */
@@ -104,8 +116,6 @@ public final class FastIDSet implements FollowSet {
     return false;
   }
 
-  public AtomicInteger jumps = new AtomicInteger(0);
-
   /**
    * @see #findForAdd(long)
    */
@@ -127,6 +137,21 @@ public final class FastIDSet implements FollowSet {
     }
     return index;
   }
+
+  /**
+   * @return the slots a lookup of the key compares to reach the slot, following its jumps from its home
+   * slot again
+   */
+  private int probes(long key, int slot) {
+    int theHashCode = (int) key & 0x7FFFFFFF;
+    int hashSize = keys.length;
+    int jump = 1 + theHashCode % (hashSize - 2);
+    int length = 1;
+    for (int index = theHashCode % hashSize; index != slot; length++) {
+      index = index < jump ? index + hashSize - jump : index - jump;
+    }
+    return length;
+  }
   
   /**
    * @see #find(long)
@@ -162,11 +187,24 @@ public final class FastIDSet implements FollowSet {
     return numEntries == 0;
   }
   
+  /**
+   * Records the probe length of sampled lookups when metrics are on. Adds and removes don't.
+   */
   public boolean contains(long key) {
-    return (key != NULL) && (key != REMOVED) && (keys[find(key)] != NULL);
+    if ((key == NULL) || (key == REMOVED)) {
+      return false;
+    }
+    int index = find(key);
+    if (ScanMetrics.ENABLED && ScanMetrics.sampled(key)) {
+      ScanMetrics.probe(probes(key, index));
+    }
+    return keys[index] != NULL;
   }
-  
+
   public boolean add(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      throw new IllegalArgumentException("Reserved key: " + key);
+    }
     // If less than half the slots are open, let's clear it up
     if (numSlotsUsed * ALLOWED_LOAD_FACTOR >= keys.length) {
       // If over half the slots used are actual entries, let's grow
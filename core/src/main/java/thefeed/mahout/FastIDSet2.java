@@ -18,6 +18,7 @@
 package thefeed.mahout;
 
 import thefeed.FollowSet;
+import thefeed.ScanMetrics;
 
 import java.util.Arrays;
 
@@ -45,8 +46,23 @@ public final class FastIDSet2 implements FollowSet {
     Arrays.fill(keys, NULL);
   }
 
+  /**
+   * Print how full this set is and how many slots a lookup of each of its keys compares.
+   */
   @Override
   public void report() {
+    long probes = 0;
+    int longest = 0;
+    for (int i = 0; i < keys.length; i++) {
+      long key = keys[i];
+      if ((key != NULL) && (key != REMOVED)) {
+        int length = probes(key, i);
+        probes += length;
+        longest = Math.max(longest, length);
+      }
+    }
+    System.out.println(String.format("%d keys in %d slots, probes mean %.2f max %d", numEntries, keys.length,
+        numEntries == 0 ? 0 : (double) probes / numEntries, longest));
   }
 
   public static final int MAX_INT_SMALLER_TWIN_PRIME = 2147482949;
@@ -73,16 +89,52 @@ public final class FastIDSet2 implements FollowSet {
     }
     return index;
   }
-  
+
+  /**
+   * @return the slots a lookup of the key compares to reach the index, with linear probing how far the
+   * index is past the key's home slot
+   */
+  private int probes(long key, int index) {
+    return ((index - (int) key) & mask) + 1;
+  }
+
+  /**
+   * Records the probe length of sampled lookups when metrics are on. Adds and removes don't.
+   */
   public boolean contains(long key) {
-    return (key != NULL) && (key != REMOVED) && (keys[find(key)] != NULL);
+    if ((key == NULL) || (key == REMOVED)) {
+      return false;
+    }
+    int index = find(key);
+    if (ScanMetrics.ENABLED && ScanMetrics.sampled(key)) {
+      ScanMetrics.probe(probes(key, index));
+    }
+    return keys[index] != NULL;
   }
 
   public long[] getKeys() {
     return keys;
   }
 
+  public int size() {
+    return numEntries;
+  }
+
+  public long[] toArray() {
+    long[] result = new long[numEntries];
+    for (int i = 0, position = 0; i < result.length; i++) {
+      while ((keys[position] == NULL) || (keys[position] == REMOVED)) {
+        position++;
+      }
+      result[i] = keys[position++];
+    }
+    return result;
+  }
+
   public boolean add(long key) {
+    if ((key == NULL) || (key == REMOVED)) {
+      throw new IllegalArgumentException("Reserved key: " + key);
+    }
     // If less than half the slots are open, let's clear it up
     if (numSlotsUsed * ALLOWED_LOAD_FACTOR >= keys.length) {
       // If over half the slots used are actual entries, let's grow
@@ -0,0 +1,80 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static thefeed.FollowSets.follows;
+
+/**
+ * Check the author index returns the same timelines as scanning the feed.
+ */
+public class AuthorIndexTest {
+
+  @Test
+  public void testAuthorIndexMatchesScan() {
+    Random r = new Random(6);
+    AuthorIndex index = new AuthorIndex();
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100, new EpochCountRetention(20), index);
+    for (int i = 0; i < 5050; i++) {
+      store.append(r.nextInt(200), i);
+    }
+    assertEquals(1950, store.size());
+    assertEquals(200, index.authors());
+    for (int followees : new int[]{1, 5, 50, 200}) {
+      FollowSet follows = new FastIDSet2(followees);
+      while (follows.size() < followees) {
+        follows.add(r.nextInt(200));
+      }
+      // Postings of expired epochs are not returned
+      long[] all = store.timeline(follows, Integer.MAX_VALUE);
+      assertArrayEquals(all, index.timeline(follows, Integer.MAX_VALUE));
+      assertArrayEquals(Arrays.copyOf(all, 10), index.timeline(follows, 10));
+      assertArrayEquals(Arrays.copyOf(all, 10), new QueryPlanner(store).timeline(follows, 10));
+    }
+    int count = 0;
+    for (Epoch epoch = store.head(); epoch != null; epoch = epoch.next()) {
+      for (int i = 0; i < epoch.size(); i++) {
+        if (epoch.userid(i) == 7) {
+          count++;
+        }
+      }
+    }
+    assertEquals(count, index.count(7));
+    assertEquals(0, index.count(1000));
+  }
+
+  @Test
+  public void testExpiredAuthorsAreDropped() {
+    AuthorIndex index = new AuthorIndex();
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100, new EpochCountRetention(2), index);
+    // Authors 1000 and up only post in the first epoch, 7 posts in every one
+    for (int i = 0; i < 100; i++) {
+      store.append(i % 2 == 0 ? 7 : 1000 + i, i);
+    }
+    assertEquals(51, index.authors());
+    for (int i = 100; i < 300; i++) {
+      store.append(i % 2 == 0 ? 7 : i % 10, i);
+    }
+    assertEquals(2, store.epochs());
+    assertEquals(5, index.authors());
+    assertEquals(120, index.count(7));
+    assertEquals(0, index.count(1001));
+    assertArrayEquals(new long[]{298, 297}, index.timeline(follows(7), 2));
+    assertArrayEquals(store.timeline(follows(7, 1, 3), 1000), index.timeline(follows(7, 1, 3), 1000));
+
+    // A new author for every post, those who have expired are swept by the appends that follow
+    for (int i = 300; i < 20300; i++) {
+      store.append(i, i);
+    }
+    // The 200 authors in the feed and at most the few the sweep hasn't reached yet
+    assertTrue(index.authors() < 1000);
+    assertEquals(0, index.count(300));
+    assertArrayEquals(store.timeline(follows(20299, 20200, 7), 10), index.timeline(follows(20299, 20200, 7), 10));
+  }
+}
@@ -0,0 +1,44 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check a batch scan gives every follow set the same results as scanning for it alone.
+ */
+public class BatchScanTest {
+
+  @Test
+  public void testBatchScan() {
+    Random r = new Random(23);
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000);
+    for (int i = 0; i < 50000; i++) {
+      store.append(r.nextInt(20000), i);
+    }
+    // More than 64 sets, from a few followees that summaries can skip for to many that can't
+    FollowSet[] follows = new FollowSet[70];
+    for (int k = 0; k < follows.length; k++) {
+      follows[k] = new FastIDSet2(10);
+      for (long userid : range(r, k % 7 == 0 ? 2 : k * 10, 20000)) {
+        follows[k].add(userid);
+      }
+    }
+    BatchScan batch = new BatchScan(follows);
+    assertEquals(70, batch.size());
+    int[] all = batch.scan(store, Integer.MAX_VALUE);
+    int[] limited = batch.scan(store, 20);
+    long[][] timelines = batch.timelines(store, 20);
+    for (int k = 0; k < follows.length; k++) {
+      assertEquals(store.scan(follows[k], Integer.MAX_VALUE), all[k]);
+      assertEquals(store.scan(follows[k], 20), limited[k]);
+      assertArrayEquals(store.timeline(follows[k], 20), timelines[k]);
+    }
+    assertEquals(0, batch.scan(store, 0)[0]);
+  }
+}
@@ -0,0 +1,56 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static thefeed.FollowSets.checkContract;
+
+/**
+ * Check the bitmap set keeps the follow set contract, including followees far from the rest.
+ */
+public class BitmapSetTest {
+
+  @Test
+  public void testBitmapSet() {
+    Random r = new Random(10);
+    long[] userids = new long[50004];
+    for (int i = 0; i < 50000; i++) {
+      userids[i] = r.nextInt(200000) - 100000;
+    }
+    // Sparse followees far above and below the rest
+    userids[50000] = 1L << 32;
+    userids[50001] = (1L << 32) + 1;
+    userids[50002] = -(1L << 32);
+    userids[50003] = 5000000000L;
+    long[] probes = new long[600003];
+    for (int i = 0; i < 600000; i++) {
+      probes[i] = i - 300000;
+    }
+    probes[600000] = (1L << 32) + 2;
+    probes[600001] = (1L << 32) - 1;
+    probes[600002] = -(1L << 32) - 1;
+    BitmapSet bitmap = new BitmapSet();
+    checkContract(bitmap, userids, probes);
+    // Followees at both ends of the userids only add their own chunks, and come out in order
+    long[] keys = bitmap.toArray();
+    assertEquals(Long.MIN_VALUE + 1, keys[0]);
+    assertEquals(Long.MAX_VALUE - 1, keys[keys.length - 1]);
+    long[] sorted = keys.clone();
+    Arrays.sort(sorted);
+    assertArrayEquals(sorted, keys);
+    assertArrayEquals(keys, bitmap.getKeys());
+
+    // Far followees first, so the dense range is only found later and takes over chunks in between
+    long[] reversed = new long[userids.length];
+    for (int i = 0; i < userids.length; i++) {
+      reversed[i] = userids[userids.length - 1 - i];
+    }
+    BitmapSet outliersFirst = new BitmapSet();
+    checkContract(outliersFirst, reversed, probes);
+    assertArrayEquals(keys, outliersFirst.toArray());
+  }
+}
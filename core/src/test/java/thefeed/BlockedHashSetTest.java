@@ -0,0 +1,31 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static thefeed.FollowSets.checkContract;
+
+/**
+ * Check the blocked cuckoo set keeps the follow set contract as it grows.
+ */
+public class BlockedHashSetTest {
+
+  @Test
+  public void testBlockedHashSet() {
+    Random r = new Random(9);
+    long[] userids = new long[100000];
+    for (int i = 0; i < userids.length; i++) {
+      userids[i] = r.nextInt(1000000) - 500000;
+    }
+    long[] probes = new long[1200000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = i - 600000;
+    }
+    // Starts tiny so that it has to grow and kick keys around
+    checkContract(new BlockedHashSet(1), userids, probes);
+    // Empty slots hold the reserved userid, it must never be found
+    assertFalse(new BlockedHashSet(16).contains(Long.MIN_VALUE));
+  }
+}
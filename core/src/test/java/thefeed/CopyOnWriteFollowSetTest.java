@@ -0,0 +1,95 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check follows and unfollows while scans read the set.
+ */
+public class CopyOnWriteFollowSetTest {
+
+  @Test
+  public void testCopyOnWriteFollowSet() throws Exception {
+    final int stable = 4;
+    final int pairs = 100;
+    // Spread out so that copies go from a sorted array through both hash tables as pairs are followed
+    final CopyOnWriteFollowSet follows = new CopyOnWriteFollowSet(new FollowSetFactory(8, 100));
+    for (int i = 0; i < stable; i++) {
+      follows.add(i);
+    }
+    final FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000);
+    Random r = new Random(13);
+    for (int i = 0; i < 100000; i++) {
+      int user = r.nextInt(stable + pairs * 2 * 2);
+      store.append(user < stable ? user : stable + (user - stable) / 2 * 1000 + user % 2, i);
+    }
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService es = Executors.newCachedThreadPool();
+    try {
+      List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 2; i++) {
+        readers.add(es.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int checked = 0;
+            do {
+              // Pairs are followed together and the even one is unfollowed first
+              FollowSet snapshot = follows.snapshot();
+              assertEquals(snapshot.size(), snapshot.toArray().length);
+              for (int i = 0; i < stable; i++) {
+                assertTrue(snapshot.contains(i));
+              }
+              for (int pair = 0; pair < pairs; pair++) {
+                long even = stable + pair * 1000;
+                assertTrue(!snapshot.contains(even) || snapshot.contains(even + 1));
+              }
+              // Scans of the live set only ever see users that were followed at some point
+              store.scan(follows, Integer.MAX_VALUE, new ScanCollector() {
+                @Override
+                public void collect(long userid, long postid) {
+                  assertTrue(userid < stable + pairs * 1000);
+                }
+              });
+              checked++;
+            } while (!done.get());
+            return checked;
+          }
+        }));
+      }
+      for (int round = 0; round < 20; round++) {
+        for (int pair = 0; pair < pairs; pair++) {
+          long even = stable + pair * 1000;
+          assertTrue(follows.addAll(new long[]{even, even + 1}));
+        }
+        assertFalse(follows.addAll(new long[]{stable, stable + 1}));
+        assertTrue(follows.snapshot() instanceof BlockedHashSet);
+        assertEquals(stable + pairs * 2, follows.size());
+        for (int pair = 0; pair < pairs; pair++) {
+          long even = stable + pair * 1000;
+          assertTrue(follows.remove(even));
+          assertTrue(follows.remove(even + 1));
+        }
+        assertFalse(follows.remove(stable));
+        assertEquals(stable, follows.size());
+      }
+      done.set(true);
+      for (Future<Integer> reader : readers) {
+        assertTrue(reader.get() > 0);
+      }
+    } finally {
+      es.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check scanning by epoch dictionaries counts the same matches as the scalar scan.
+ */
+public class DictionaryScanEngineTest {
+
+  @Test
+  public void testDictionaryScanEngineMatchesScalar() {
+    EpochAllocator[] allocators = {LongArrayEpoch.ALLOCATOR, LongBufferEpoch.DIRECT, ColumnarEpoch.ALLOCATOR};
+    Random r = new Random(14);
+    SortedArraySet follows = new SortedArraySet(range(r, 1000, 10000));
+    ScanEngine dictionary = new DictionaryScanEngine();
+    for (EpochAllocator allocator : allocators) {
+      FeedStore store = new FeedStore(allocator, 1001);
+      for (int i = 0; i < 100000; i++) {
+        store.append(r.nextInt(10000) - 100, i);
+      }
+      int hits = store.scan(follows, Integer.MAX_VALUE);
+      assertTrue(hits > 0);
+      assertEquals(hits, store.scan(follows, Integer.MAX_VALUE, dictionary));
+      assertEquals(hits / 2, store.scan(follows, hits / 2, dictionary));
+      assertEquals(3, store.scan(follows, 3, dictionary));
+      // The open head is scanned without a dictionary
+      assertNull(store.head().dictionary());
+      Epoch sealed = store.head().next();
+      EpochDictionary encoded = sealed.dictionary();
+      // Built as the epoch was sealed, not by the first reader
+      assertSame(encoded, sealed.dictionary());
+      int[] counts = new int[encoded.size()];
+      for (int i = 0; i < sealed.size(); i++) {
+        int code = Arrays.binarySearch(encoded.userids(), sealed.userid(i));
+        assertTrue(code >= 0);
+        counts[code]++;
+      }
+      for (int code = 0; code < encoded.size(); code++) {
+        assertEquals(counts[code], encoded.count(code));
+      }
+    }
+  }
+}
@@ -0,0 +1,502 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static thefeed.FollowSets.follows;
+
+/**
+ * Check that the feed store links, scans, pages and expires epochs newest first the same way for every
+ * backend.
+ */
+public class FeedStoreTest {
+
+  @Test
+  public void testLongArrayEpochs() {
+    checkStore(LongArrayEpoch.ALLOCATOR);
+  }
+
+  @Test
+  public void testLongBufferEpochs() {
+    checkStore(LongBufferEpoch.DIRECT);
+  }
+
+  @Test
+  public void testColumnarEpochs() {
+    checkStore(ColumnarEpoch.ALLOCATOR);
+  }
+
+  @Test
+  public void testMappedEpochs() throws IOException {
+    File dir = File.createTempFile("epochs", "");
+    dir.delete();
+    try {
+      checkStore(new EpochDirectory(dir));
+
+      // Reopen what was written as if after a restart
+      FeedStore store = new EpochDirectory(dir).open(10);
+      assertEquals(96, store.size());
+      assertEquals(11, store.epochs());
+      assertFalse(store.head().isSealed());
+      assertTrue(store.head().next().isSealed());
+      // Epochs reopened sealed are encoded as they are linked
+      assertNotNull(store.head().next().dictionary());
+      assertNull(store.head().dictionary());
+      assertEquals(95, store.head().postid(0));
+      assertEquals(3, store.head().userid(0));
+      FollowSet follows = new FastIDSet2(10);
+      follows.add(3);
+      follows.add(5);
+      assertEquals(28, store.scan(follows, Integer.MAX_VALUE));
+      for (int i = 96; i < 110; i++) {
+        store.append(i % 7, i);
+      }
+      assertEquals(12, store.epochs());
+      assertEquals(32, store.scan(follows, Integer.MAX_VALUE));
+
+      // Expired epochs are deleted
+      store = new EpochDirectory(dir).open(10, new EpochCountRetention(2));
+      assertEquals(10, store.expire(System.currentTimeMillis()));
+      assertEquals(2, dir.listFiles().length);
+      assertArrayEquals(new long[]{108, 103, 101, 96, 95}, store.timeline(follows, Integer.MAX_VALUE));
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testFailedDeletesAreRetried() throws IOException {
+    File dir = File.createTempFile("epochs", "");
+    dir.delete();
+    try {
+      FeedStore store = new EpochDirectory(dir).open(10, new EpochCountRetention(2));
+      for (int i = 0; i < 20; i++) {
+        store.append(i % 2, i);
+      }
+      // A non-empty directory in place of the oldest epoch's file can't be deleted
+      File oldest = ((MappedEpoch) store.head().next()).file();
+      assertTrue(oldest.delete());
+      assertTrue(new File(oldest, "busy").mkdirs());
+      store.append(0, 20);
+      assertEquals(2, store.epochs());
+      assertTrue(oldest.exists());
+      assertTrue(new File(oldest, "busy").delete());
+      // Deleted along with the next epoch to expire
+      for (int i = 21; i < 31; i++) {
+        store.append(i % 2, i);
+      }
+      assertFalse(oldest.exists());
+      assertEquals(2, dir.listFiles().length);
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testCollectResults() throws InterruptedException {
+    Random r = new Random(3);
+    FollowSet follows = new FastIDSet2(100);
+    for (int i = 0; i < 100; i++) {
+      follows.add(r.nextInt(1000));
+    }
+    EpochAllocator[] allocators = {LongArrayEpoch.ALLOCATOR, LongBufferEpoch.DIRECT, ColumnarEpoch.ALLOCATOR};
+    for (EpochAllocator allocator : allocators) {
+      FeedStore store = new FeedStore(allocator, 100);
+      long[] userids = new long[10050];
+      for (int i = 0; i < userids.length; i++) {
+        userids[i] = r.nextInt(1000);
+        store.append(userids[i], i);
+      }
+      ScanResults expected = new ScanResults();
+      for (int i = userids.length - 1; i >= 0; i--) {
+        if (follows.contains(userids[i])) {
+          expected.collect(userids[i], i);
+        }
+      }
+      ScanResults results = new ScanResults();
+      assertEquals(expected.size(), store.scan(follows, Integer.MAX_VALUE, results));
+      assertArrayEquals(expected.toArray(), results.toArray());
+
+      results.clear();
+      assertEquals(5, store.scan(follows, 5, results));
+      assertArrayEquals(Arrays.copyOf(expected.toArray(), 5), results.toArray());
+
+      ExecutorService es = Executors.newFixedThreadPool(3);
+      try {
+        ParallelScanner scanner = new ParallelScanner(es, 7);
+        results.clear();
+        assertEquals(expected.size(), scanner.scan(store, follows, Integer.MAX_VALUE, results));
+        assertArrayEquals(expected.toArray(), results.toArray());
+        results.clear();
+        assertEquals(50, scanner.scan(store, follows, 50, results));
+        assertArrayEquals(Arrays.copyOf(expected.toArray(), 50), results.toArray());
+      } finally {
+        es.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void testTimelineStopsEarly() {
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100);
+    for (int i = 0; i < 10000; i++) {
+      store.append(i % 10, i);
+    }
+    final FastIDSet2 follows = new FastIDSet2(10);
+    follows.add(4);
+    final int[] probes = new int[1];
+    FollowSet counting = new FollowSet() {
+      @Override
+      public boolean add(long l) {
+        return follows.add(l);
+      }
+
+      @Override
+      public boolean contains(long l) {
+        probes[0]++;
+        return follows.contains(l);
+      }
+
+      @Override
+      public void report() {
+      }
+
+      @Override
+      public long[] getKeys() {
+        return follows.getKeys();
+      }
+
+      @Override
+      public int size() {
+        return follows.size();
+      }
+
+      @Override
+      public long[] toArray() {
+        return follows.toArray();
+      }
+    };
+    assertArrayEquals(new long[]{9994, 9984, 9974}, store.timeline(counting, 3));
+    // Only the entries back to the third match were looked at
+    assertEquals(26, probes[0]);
+    assertEquals(1000, store.timeline(counting, 5000).length);
+    assertEquals(0, store.timeline(new FastIDSet2(10), 20).length);
+  }
+
+  @Test
+  public void testPagesResumeWhereTheyStopped() {
+    Random r = new Random(4);
+    FollowSet follows = new FastIDSet2(10);
+    for (int i = 0; i < 10; i++) {
+      follows.add(r.nextInt(100));
+    }
+    EpochAllocator[] allocators = {LongArrayEpoch.ALLOCATOR, LongBufferEpoch.DIRECT, ColumnarEpoch.ALLOCATOR};
+    for (EpochAllocator allocator : allocators) {
+      for (int limit : new int[]{1, 7, 50, 1000}) {
+        FeedStore store = new FeedStore(allocator, 50);
+        for (int i = 0; i < 5025; i++) {
+          store.append(r.nextInt(100), i);
+        }
+        long[] all = store.timeline(follows, Integer.MAX_VALUE);
+        ScanResults paged = new ScanResults();
+        TimelinePage page = store.page(follows, limit);
+        // New entries after the first page do not shift the pages that follow
+        store.append(r.nextInt(100), 10000);
+        while (true) {
+          assertTrue(page.postids().length <= limit);
+          for (long postid : page.postids()) {
+            paged.collect(0, postid);
+          }
+          if (!page.hasMore()) {
+            break;
+          }
+          assertEquals(limit, page.postids().length);
+          page = store.page(follows, limit, page.cursor());
+        }
+        assertArrayEquals(all, paged.toArray());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentAppendAndScan() throws Exception {
+    final int writers = 4;
+    final int perWriter = 200000;
+    final FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 64);
+    final FollowSet follows = new FastIDSet2(writers);
+    for (int w = 0; w < writers; w++) {
+      follows.add(w);
+    }
+    final AtomicBoolean done = new AtomicBoolean();
+    ExecutorService es = Executors.newCachedThreadPool();
+    try {
+      List<Future<Integer>> scans = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 2; i++) {
+        scans.add(es.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int checked = 0;
+            do {
+              checkSnapshot(store, follows, writers, perWriter);
+              checked++;
+            } while (!done.get());
+            return checked;
+          }
+        }));
+      }
+      List<Future<?>> appends = new ArrayList<Future<?>>();
+      for (int w = 0; w < writers; w++) {
+        final int userid = w;
+        appends.add(es.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < perWriter; i++) {
+              store.append(userid, (long) userid * perWriter + i);
+            }
+          }
+        }));
+      }
+      for (Future<?> append : appends) {
+        append.get();
+      }
+      done.set(true);
+      for (Future<Integer> scan : scans) {
+        assertTrue(scan.get() > 0);
+      }
+      assertEquals((long) writers * perWriter, store.size());
+      int[] seen = checkSnapshot(store, follows, writers, perWriter);
+      for (int w = 0; w < writers; w++) {
+        assertEquals(perWriter, seen[w]);
+      }
+    } finally {
+      es.shutdownNow();
+    }
+  }
+
+  /**
+   * Each writer appends its postids in order, so newest first a consistent scan sees every writer's postids
+   * counting down to its first one without gaps, duplicates or entries paired with another writer.
+   */
+  private int[] checkSnapshot(FeedStore store, FollowSet follows, final int writers, final int perWriter) {
+    final long[] expected = new long[writers];
+    final int[] seen = new int[writers];
+    Arrays.fill(expected, -1);
+    store.scan(follows, Integer.MAX_VALUE, new ScanCollector() {
+      @Override
+      public void collect(long userid, long postid) {
+        int w = (int) userid;
+        assertEquals(userid, postid / perWriter);
+        if (expected[w] == -1) {
+          expected[w] = postid;
+        }
+        assertEquals(expected[w]--, postid);
+        seen[w]++;
+      }
+    });
+    for (int w = 0; w < writers; w++) {
+      assertEquals(seen[w] == 0 ? -1 : (long) w * perWriter - 1, expected[w]);
+    }
+    return seen;
+  }
+
+  @Test
+  public void testEpochCountRetention() {
+    EpochPool pool = new EpochPool(LongArrayEpoch.ALLOCATOR);
+    FeedStore store = new FeedStore(pool, 10, new EpochCountRetention(2));
+    Epoch first = null;
+    for (int i = 0; i < 25; i++) {
+      store.append(i % 2, i);
+      if (first == null) {
+        first = store.head();
+      }
+    }
+    // 0..9 expired when the epoch holding 20..24 was started
+    assertEquals(2, store.epochs());
+    assertEquals(15, store.size());
+    assertEquals(1, pool.size());
+    assertArrayEquals(new long[]{24, 22, 20, 18, 16, 14, 12, 10}, store.timeline(follows(0), 100));
+    assertEquals(null, store.head().next().next());
+
+    // With nobody reading the expired storage is reused for the very next epoch
+    for (int i = 25; i < 31; i++) {
+      store.append(i % 2, i);
+    }
+    assertSame(first, store.head());
+    assertEquals(1, pool.size());
+    assertEquals(1, store.head().size());
+    assertEquals(30, store.head().postid(0));
+    assertArrayEquals(new long[]{30, 28, 26, 24, 22, 20}, store.timeline(follows(0), 100));
+  }
+
+  @Test
+  public void testExpiredEpochsWaitForReaders() {
+    EpochPool pool = new EpochPool(LongArrayEpoch.ALLOCATOR);
+    FeedStore store = new FeedStore(pool, 10, new EpochCountRetention(2));
+    for (int i = 0; i < 20; i++) {
+      store.append(i % 2, i);
+    }
+    // A reader that has reached the oldest epoch and is still scanning it
+    int ticket = store.enter();
+    Epoch oldest = store.head().next();
+    for (int i = 20; i < 40; i++) {
+      store.append(i % 2, i);
+    }
+    assertEquals(2, store.epochs());
+    assertEquals(0, pool.size());
+    assertEquals(0, oldest.postid(0));
+    assertEquals(9, oldest.postid(9));
+    store.exit(ticket);
+    assertEquals(0, store.expire(System.currentTimeMillis()));
+    assertEquals(2, pool.size());
+    store.append(0, 40);
+    assertSame(oldest, store.head());
+    assertArrayEquals(new long[]{40, 38, 36, 34, 32, 30}, store.timeline(follows(0), 6));
+  }
+
+  @Test
+  public void testMappedEpochsAreNotPooled() throws IOException {
+    File dir = File.createTempFile("epochs", "");
+    dir.delete();
+    try {
+      new EpochPool(new EpochDirectory(dir));
+      fail("Pooled mapped epochs");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } finally {
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testAgeRetention() {
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 10, new AgeRetention(1, TimeUnit.HOURS));
+    for (int i = 0; i < 45; i++) {
+      store.append(i % 2, i);
+    }
+    assertEquals(5, store.epochs());
+    long now = System.currentTimeMillis();
+    assertEquals(0, store.expire(now));
+    // Everything but the open head is more than an hour old by then
+    assertEquals(4, store.expire(now + TimeUnit.HOURS.toMillis(2)));
+    assertEquals(1, store.epochs());
+    assertEquals(5, store.size());
+    assertArrayEquals(new long[]{44, 42, 40}, store.timeline(follows(0), 100));
+
+    // An expired cursor ends the timeline rather than failing
+    TimelinePage page = store.page(follows(0), 1);
+    store.append(0, 45);
+    for (int i = 46; i < 60; i++) {
+      store.append(1, i);
+    }
+    store.seal();
+    store.append(1, 60);
+    assertEquals(2, store.expire(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2)));
+    assertFalse(store.page(follows(0), 10, page.cursor()).hasMore());
+  }
+
+  @Test
+  public void testSummariesSkipEpochs() throws InterruptedException {
+    // Each epoch only has posts from its own block of 100 userids
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000);
+    Random r = new Random(5);
+    for (int i = 0; i < 20500; i++) {
+      store.append(i / 1000 * 100 + r.nextInt(100), i);
+    }
+    assertEquals(21, store.epochs());
+    FollowSet follows = follows(150, 1250, 1999);
+    // The open head is never skipped and one sealed epoch matches each followee
+    assertEquals(17, store.skipped(follows));
+    long[] expected = new long[0];
+    for (Epoch epoch = store.head(); epoch != null; epoch = epoch.next()) {
+      ScanResults results = new ScanResults();
+      epoch.scan(follows, Integer.MAX_VALUE, results);
+      long[] all = Arrays.copyOf(expected, expected.length + results.size());
+      System.arraycopy(results.toArray(), 0, all, expected.length, results.size());
+      expected = all;
+    }
+    assertTrue(expected.length > 0);
+    assertArrayEquals(expected, store.timeline(follows, Integer.MAX_VALUE));
+    assertEquals(expected.length, store.scan(follows, Integer.MAX_VALUE));
+    ExecutorService es = Executors.newFixedThreadPool(2);
+    try {
+      assertEquals(expected.length, new ParallelScanner(es, 4).scan(store, follows, Integer.MAX_VALUE));
+    } finally {
+      es.shutdownNow();
+    }
+    TimelinePage page = store.page(follows, 3);
+    assertArrayEquals(Arrays.copyOf(expected, 3), page.postids());
+    assertArrayEquals(Arrays.copyOfRange(expected, 3, 6), store.page(follows, 3, page.cursor()).postids());
+
+    // Large follow sets would match nearly every epoch so the summaries are not consulted
+    FollowSet many = new FastIDSet2(100);
+    for (int i = 0; i < 100; i++) {
+      many.add(i * 10000);
+    }
+    assertEquals(0, store.skipped(many));
+  }
+
+  private void checkStore(EpochAllocator allocator) {
+    FeedStore store = new FeedStore(allocator, 10);
+    for (int i = 0; i < 95; i++) {
+      store.append(i % 7, i);
+    }
+    assertEquals(95, store.size());
+    assertEquals(10, store.epochs());
+    Epoch head = store.head();
+    assertEquals(5, head.size());
+    assertFalse(head.isSealed());
+    assertEquals(94, head.postid(4));
+    assertEquals(94 % 7, head.userid(4));
+    long postid = 94;
+    for (Epoch epoch = head; epoch != null; epoch = epoch.next()) {
+      for (int i = epoch.size() - 1; i >= 0; i--) {
+        assertEquals(postid--, epoch.postid(i));
+      }
+      if (epoch != head) {
+        assertTrue(epoch.isSealed());
+      }
+    }
+    assertEquals(-1, postid);
+
+    FollowSet follows = new FastIDSet2(10);
+    follows.add(3);
+    follows.add(5);
+    // 3, 5, 10, 12, ... 94 and 89 are the last two of the 27 hits
+    assertEquals(27, store.scan(follows, Integer.MAX_VALUE));
+    assertEquals(4, store.scan(follows, 4));
+
+    store.seal();
+    assertTrue(head.isSealed());
+    store.append(3, 95);
+    assertEquals(11, store.epochs());
+    assertEquals(1, store.head().size());
+    assertEquals(28, store.scan(follows, Integer.MAX_VALUE));
+  }
+}
@@ -0,0 +1,77 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static thefeed.FollowSets.checkContract;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check the factory picks each representation and they all agree with FastIDSet2.
+ */
+public class FollowSetFactoryTest {
+
+  @Test
+  public void testFollowSetFactory() {
+    FollowSetFactory factory = new FollowSetFactory(8, 1000);
+    Random r = new Random(11);
+    long[] few = {5, -3, 5, 1L << 40};
+    FollowSet set = factory.create(few);
+    assertTrue(set instanceof SortedArraySet);
+    assertArrayEquals(new long[]{-3, 5, 1L << 40}, set.toArray());
+    assertTrue(factory.create(range(r, 500, 1000)) instanceof BitmapSet);
+    assertTrue(factory.create(range(r, 500, 1000000)) instanceof FastIDSet2);
+    assertTrue(factory.create(range(r, 5000, Integer.MAX_VALUE)) instanceof BlockedHashSet);
+    for (long[] userids : new long[][]{few, range(r, 500, 1000), range(r, 500, 1000000), range(r, 5000, 10000000)}) {
+      set = factory.create(userids);
+      FastIDSet2 expected = new FastIDSet2(userids.length);
+      for (long userid : userids) {
+        expected.add(userid);
+      }
+      assertEquals(expected.size(), set.size());
+      for (int i = 0; i < 10000; i++) {
+        long userid = r.nextBoolean() ? userids[r.nextInt(userids.length)] : r.nextInt(10000000);
+        assertEquals(expected.contains(userid), set.contains(userid));
+      }
+    }
+    // The default thresholds skip FastIDSet2 at every size
+    FollowSetFactory defaults = FollowSetFactory.DEFAULT;
+    for (int size : new int[]{defaults.sortedMax() + 1, 100, 10000}) {
+      assertTrue(defaults.create(range(r, size, Integer.MAX_VALUE)) instanceof BlockedHashSet);
+    }
+    try {
+      factory.create(new long[]{5, Long.MAX_VALUE});
+      fail("Created a set with a reserved userid");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * The sets without a test of their own, the rest check the contract in theirs.
+   */
+  @Test
+  public void testContract() {
+    Random r = new Random(16);
+    long[] userids = new long[20000];
+    for (int i = 0; i < userids.length; i++) {
+      userids[i] = i % 4 == 0 ? r.nextLong() : r.nextInt(50000) - 25000;
+    }
+    long[] probes = new long[100000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = r.nextInt(60000) - 30000;
+    }
+    checkContract(new SortedArraySet(), Arrays.copyOf(userids, 2000), probes);
+    checkContract(new FastIDSet(), userids, probes);
+    checkContract(new FastIDSet2(1), userids, probes);
+    checkContract(new CopyOnWriteFollowSet(new FollowSetFactory(8, 100)), Arrays.copyOf(userids, 500), probes);
+  }
+}
@@ -0,0 +1,105 @@
+package thefeed;
+
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Userids, follow sets and the follow set contract shared by the tests.
+ */
+final class FollowSets {
+
+  private static final long[] RESERVED = {Long.MIN_VALUE, Long.MAX_VALUE};
+  // Userids every set must handle, negative ones and those next to the reserved ones
+  private static final long[] BOUNDARIES = {
+      0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1};
+
+  private FollowSets() {
+  }
+
+  /**
+   * @return size random userids below range, possibly repeated
+   */
+  static long[] range(Random r, int size, int range) {
+    long[] userids = new long[size];
+    for (int i = 0; i < size; i++) {
+      userids[i] = r.nextInt(range);
+    }
+    return userids;
+  }
+
+  static FollowSet follows(long... userids) {
+    FollowSet follows = new FastIDSet2(userids.length);
+    for (long userid : userids) {
+      follows.add(userid);
+    }
+    return follows;
+  }
+
+  /**
+   * Check a follow set against a HashSet: that it starts empty, rejects and never contains the reserved
+   * userids, then that adding the userids and the boundary ones reports the same as the HashSet and
+   * leaves the same members.
+   *
+   * @param empty   a new set with nothing added
+   * @param userids added one at a time, may repeat
+   * @param probes  looked up once everything has been added
+   */
+  static void checkContract(FollowSet empty, long[] userids, long[] probes) {
+    FollowSet set = empty;
+    assertEquals(0, set.size());
+    assertEquals(0, set.toArray().length);
+    for (long userid : BOUNDARIES) {
+      assertFalse(set.contains(userid));
+    }
+    checkReserved(set);
+    Set<Long> expected = new HashSet<Long>();
+    for (long userid : userids) {
+      assertEquals(expected.add(userid), set.add(userid));
+    }
+    for (long userid : BOUNDARIES) {
+      assertEquals(expected.add(userid), set.add(userid));
+    }
+    assertEquals(expected.size(), set.size());
+    long[] all = new long[expected.size()];
+    int i = 0;
+    for (long userid : expected) {
+      all[i++] = userid;
+    }
+    Arrays.sort(all);
+    long[] members = set.toArray();
+    Arrays.sort(members);
+    assertArrayEquals(all, members);
+    for (long userid : all) {
+      assertTrue(set.contains(userid));
+    }
+    for (long userid : probes) {
+      assertEquals(expected.contains(userid), set.contains(userid));
+    }
+    checkReserved(set);
+  }
+
+  private static void checkReserved(FollowSet set) {
+    int size = set.size();
+    for (long reserved : RESERVED) {
+      assertFalse(set.contains(reserved));
+      try {
+        set.add(reserved);
+        fail("Added reserved userid " + reserved);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+      assertFalse(set.contains(reserved));
+      assertEquals(size, set.size());
+    }
+  }
+}
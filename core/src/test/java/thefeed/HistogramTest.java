@@ -0,0 +1,40 @@
+package thefeed;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check histogram percentiles stay within a bucket of the recorded values.
+ */
+public class HistogramTest {
+
+  @Test
+  public void testHistogram() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.percentile(99));
+    for (long i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500.5, histogram.mean(), 0);
+    assertEquals(1000, histogram.max());
+    // Within the 12.5% a bucket spans
+    assertEquals(500, histogram.percentile(50), 500 / 8);
+    assertEquals(990, histogram.percentile(99), 990 / 8);
+    assertEquals(1, histogram.percentile(0));
+    for (long value : new long[]{0, 15, 16, 17, 1000, 1L << 40}) {
+      int bucket = Histogram.bucket(value);
+      assertTrue(Histogram.lowest(bucket) <= value);
+      assertTrue(value < Histogram.lowest(bucket + 1));
+    }
+    assertTrue(Histogram.lowest(Histogram.bucket(Long.MAX_VALUE)) > 0);
+    Histogram other = new Histogram();
+    other.record(5000);
+    histogram.add(other);
+    assertEquals(1001, histogram.count());
+    assertEquals(5000, histogram.max());
+    assertEquals(5000, histogram.percentile(100));
+  }
+}
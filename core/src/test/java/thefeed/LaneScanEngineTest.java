@@ -0,0 +1,40 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the lane scan engine counts the same matches as the scalar scan.
+ */
+public class LaneScanEngineTest {
+
+  @Test
+  public void testLaneScanEngineMatchesScalar() {
+    EpochAllocator[] allocators = {LongArrayEpoch.ALLOCATOR, LongBufferEpoch.DIRECT, ColumnarEpoch.ALLOCATOR};
+    Random r = new Random(1);
+    FollowSet follows = new FastIDSet2(1000);
+    for (int i = 0; i < 1000; i++) {
+      follows.add(r.nextInt(10000));
+    }
+    ScanEngine lanes = new LaneScanEngine();
+    for (EpochAllocator allocator : allocators) {
+      // Odd sized epochs leave a tail that is not a whole number of lanes
+      FeedStore store = new FeedStore(allocator, 1001);
+      for (int i = 0; i < 100000; i++) {
+        store.append(r.nextInt(10000), i);
+      }
+      store.append(Long.MIN_VALUE, 100000);
+      store.append(Long.MAX_VALUE, 100001);
+      int hits = store.scan(follows, Integer.MAX_VALUE);
+      assertTrue(hits > 0);
+      assertEquals(hits, store.scan(follows, Integer.MAX_VALUE, lanes));
+      assertEquals(hits / 2, store.scan(follows, hits / 2, lanes));
+      assertEquals(3, store.scan(follows, 3, lanes));
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check partitioned scans count the same matches as a sequential one.
+ */
+public class ParallelScannerTest {
+
+  @Test
+  public void testParallelScanMatchesSequential() throws InterruptedException {
+    Random r = new Random(2);
+    FollowSet follows = new FastIDSet2(100);
+    for (int i = 0; i < 100; i++) {
+      follows.add(r.nextInt(1000));
+    }
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100);
+    for (int i = 0; i < 10050; i++) {
+      store.append(r.nextInt(1000), i);
+    }
+    int hits = store.scan(follows, Integer.MAX_VALUE);
+    ExecutorService es = Executors.newFixedThreadPool(4);
+    try {
+      for (int partitions = 1; partitions <= 200; partitions *= 3) {
+        ParallelScanner scanner = new ParallelScanner(es, partitions);
+        assertEquals(hits, scanner.scan(store, follows, Integer.MAX_VALUE));
+        assertEquals(hits, scanner.scan(store, follows, Integer.MAX_VALUE, new LaneScanEngine()));
+        assertEquals(10, scanner.scan(store, follows, 10));
+      }
+    } finally {
+      es.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static thefeed.FollowSets.checkContract;
+import static thefeed.FollowSets.follows;
+
+/**
+ * Check the perfect hash set keeps the follow set contract and works as the follow set of a scan.
+ */
+public class PerfectHashSetTest {
+
+  @Test
+  public void testPerfectHashSet() {
+    Random r = new Random(8);
+    for (int size : new int[]{0, 1, 7, 1000, 20000}) {
+      long[] userids = new long[size];
+      for (int i = 0; i < size; i++) {
+        userids[i] = r.nextLong() % 1000000;
+      }
+      long[] probes = new long[100000];
+      for (int i = 0; i < probes.length; i++) {
+        probes[i] = r.nextLong() % 1000000;
+      }
+      PerfectHashSet perfect = new PerfectHashSet();
+      checkContract(perfect, userids, probes);
+      assertEquals(perfect.size(), perfect.set());
+      assertEquals(perfect.size(), perfect.getKeys().length);
+    }
+    PerfectHashSet perfect = new PerfectHashSet();
+    perfect.add(-5);
+    assertTrue(perfect.contains(-5));
+    assertFalse(perfect.contains(5));
+    // Adding rebuilds the hash
+    perfect.add(5);
+    assertTrue(perfect.contains(5));
+    assertTrue(perfect.contains(-5));
+
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100);
+    for (int i = 0; i < 10000; i++) {
+      store.append(r.nextInt(100) - 50, i);
+    }
+    FollowSet follows = follows(-50, -7, 0, 3, 49);
+    for (long userid : follows.toArray()) {
+      perfect.add(userid);
+    }
+    follows.add(-5);
+    follows.add(5);
+    assertArrayEquals(store.timeline(follows, 1000), store.timeline(perfect, 1000));
+  }
+}
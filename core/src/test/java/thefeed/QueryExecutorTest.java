@@ -0,0 +1,85 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check timelines run through the query executor and that blocked requests don't hold up scans.
+ */
+public class QueryExecutorTest {
+
+  @Test
+  public void testQueryExecutor() throws Exception {
+    Random r = new Random(25);
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000);
+    for (int i = 0; i < 20000; i++) {
+      store.append(r.nextInt(5000), i);
+    }
+    QueryExecutor queries = new QueryExecutor(store, 2);
+    FollowSet[] follows = new FollowSet[200];
+    List<Future<long[]>> timelines = new ArrayList<Future<long[]>>();
+    for (int k = 0; k < follows.length; k++) {
+      follows[k] = new FastIDSet2(50);
+      for (long userid : range(r, 50, 5000)) {
+        follows[k].add(userid);
+      }
+      timelines.add(queries.timeline(follows[k], 10));
+    }
+    for (int k = 0; k < follows.length; k++) {
+      assertArrayEquals(store.timeline(follows[k], 10), timelines.get(k).get(10, TimeUnit.SECONDS));
+    }
+    // Requests that block don't stop others scanning
+    final CountDownLatch blocked = new CountDownLatch(1);
+    Future<Boolean> waiting = queries.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return blocked.await(10, TimeUnit.SECONDS);
+      }
+    });
+    long[] timeline = queries.timeline(follows[0], 10).get(10, TimeUnit.SECONDS);
+    assertArrayEquals(store.timeline(follows[0], 10), timeline);
+    blocked.countDown();
+    assertTrue(waiting.get());
+    assertTrue(queries.shutdown(10, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Requests run on virtual threads from Java 21, and on older JVMs the test is skipped.
+   */
+  @Test
+  public void testVirtualThreads() throws Exception {
+    QueryExecutor queries = new QueryExecutor(new FeedStore(LongArrayEpoch.ALLOCATOR, 1000), 1);
+    try {
+      String version = System.getProperty("java.specification.version");
+      if (!version.startsWith("1.") && Integer.parseInt(version) >= 21) {
+        assertTrue(queries.isVirtual());
+      }
+      assumeTrue(queries.isVirtual());
+      final Method isVirtual = Thread.class.getMethod("isVirtual");
+      Future<Object> request = queries.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return isVirtual.invoke(Thread.currentThread());
+        }
+      });
+      assertEquals(Boolean.TRUE, request.get(10, TimeUnit.SECONDS));
+    } finally {
+      queries.shutdown(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static thefeed.FollowSets.follows;
+
+/**
+ * Check the planner merges postings for small follow sets and scans for large ones.
+ */
+public class QueryPlannerTest {
+
+  @Test
+  public void testQueryPlanner() {
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000, RetentionPolicy.FOREVER, new AuthorIndex());
+    Random r = new Random(7);
+    for (int i = 0; i < 100000; i++) {
+      store.append(r.nextInt(10000), i);
+    }
+    QueryPlanner planner = new QueryPlanner(store);
+    assertEquals(QueryPlanner.Plan.MERGE, planner.plan(follows(1, 2, 3), 20));
+    FollowSet many = new FastIDSet2(5000);
+    for (int i = 0; i < 5000; i++) {
+      many.add(i * 2);
+    }
+    assertEquals(QueryPlanner.Plan.SCAN, planner.plan(many, 20));
+  }
+}
@@ -0,0 +1,33 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static thefeed.FollowSets.checkContract;
+
+/**
+ * Check the Robin Hood set keeps the follow set contract and that displacements stay bounded.
+ */
+public class RobinHoodSetTest {
+
+  @Test
+  public void testRobinHoodSet() {
+    Random r = new Random(12);
+    long[] userids = new long[100000];
+    for (int i = 0; i < userids.length; i++) {
+      // Sequential ids as well as random ones, including negative
+      userids[i] = i % 2 == 0 ? i : r.nextLong();
+    }
+    long[] probes = new long[100000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = r.nextInt(300000) - 100000;
+    }
+    RobinHoodSet robinHood = new RobinHoodSet(1);
+    checkContract(robinHood, userids, probes);
+    assertFalse(robinHood.add(0));
+    assertTrue(robinHood.displacement() < RobinHoodSet.MAX_PROBE);
+  }
+}
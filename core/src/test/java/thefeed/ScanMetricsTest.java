@@ -0,0 +1,154 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet;
+import thefeed.mahout.FastIDSet2;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check recorded queries show up in snapshots and over JMX.
+ */
+public class ScanMetricsTest {
+
+  @Test
+  public void testScanMetrics() throws Exception {
+    ScanMetrics.Snapshot before = ScanMetrics.snapshot();
+    ScanMetrics.query(System.nanoTime(), 1000, 3, 10);
+    ScanMetrics.probe(2);
+    ScanMetrics.Snapshot after = ScanMetrics.snapshot();
+    assertEquals(before.queries() + 1, after.queries());
+    assertEquals(before.entriesScanned() + 1000, after.entriesScanned());
+    assertEquals(before.hits + 10, after.hits);
+    assertEquals(before.probes.count() + 1, after.probes.count());
+    assertTrue(after.epochs.max() >= 3);
+
+    // Threads that come and go all record into the same fixed histograms
+    Thread[] threads = new Thread[100];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          ScanMetrics.query(System.nanoTime(), 10, 1, 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(after.queries() + threads.length, ScanMetrics.snapshot().queries());
+
+    int sampled = 0;
+    for (long key = 0; key < 64000; key++) {
+      if (ScanMetrics.sampled(key)) {
+        sampled++;
+      }
+    }
+    assertTrue(sampled > 800 && sampled < 1200);
+
+    ScanMetrics.register();
+    ScanMetrics.register();
+    Object queries = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(ScanMetrics.NAME),
+        "Queries");
+    assertTrue((Long) queries >= after.queries());
+  }
+
+  /**
+   * A query that stops at its limit only records the entries it got to.
+   */
+  @Test
+  public void testVisitedEntries() {
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 100);
+    for (int i = 0; i < 250; i++) {
+      store.append(i % 10, i);
+    }
+    FollowSet everyone = new SortedArraySet(new long[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+    long[] limits = {5, 60, 1000};
+    // Everything matches, so a query visits as many entries as it returns
+    long[] visited = {5, 60, 250};
+    for (int k = 0; k < limits.length; k++) {
+      ScanMetrics.Snapshot before = ScanMetrics.snapshot();
+      store.timeline(everyone, (int) limits[k]);
+      store.scan(everyone, (int) limits[k]);
+      store.page(everyone, (int) limits[k]);
+      ScanMetrics.Snapshot after = ScanMetrics.snapshot();
+      assertEquals(ScanMetrics.ENABLED ? 3 * visited[k] : 0, after.entriesScanned() - before.entriesScanned());
+    }
+  }
+
+  /**
+   * Lookups only record their probe lengths when metrics are on, the metrics run of the build turns them on.
+   * Adding keys doesn't record any.
+   */
+  @Test
+  public void testProbeLengths() {
+    Random r = new Random(17);
+    FollowSet[] sets = {new FastIDSet(1000), new FastIDSet2(1000)};
+    long before = ScanMetrics.snapshot().probes.count();
+    for (FollowSet set : sets) {
+      for (int i = 0; i < 1000; i++) {
+        set.add(r.nextInt(100000));
+      }
+    }
+    assertEquals(before, ScanMetrics.snapshot().probes.count());
+    long[] probes = new long[64000];
+    for (int i = 0; i < probes.length; i++) {
+      probes[i] = r.nextInt(100000);
+    }
+    for (FollowSet set : sets) {
+      // The slots each sampled lookup compares, walking the table the way the set does
+      long sampled = 0;
+      long slots = 0;
+      long longest = 0;
+      for (long userid : probes) {
+        if (ScanMetrics.sampled(userid)) {
+          long length = probeLength(set, userid);
+          sampled++;
+          slots += length;
+          longest = Math.max(longest, length);
+        }
+      }
+      ScanMetrics.Snapshot start = ScanMetrics.snapshot();
+      int hits = 0;
+      for (long userid : probes) {
+        if (set.contains(userid)) {
+          hits++;
+        }
+      }
+      ScanMetrics.Snapshot end = ScanMetrics.snapshot();
+      assertTrue(hits > 0);
+      assertTrue(longest > 1);
+      if (ScanMetrics.ENABLED) {
+        assertEquals(sampled, end.probes.count() - start.probes.count());
+        assertEquals(slots, end.probes.total() - start.probes.total());
+        assertTrue(end.probes.max() >= longest);
+      } else {
+        assertEquals(0, end.probes.count() - start.probes.count());
+      }
+    }
+  }
+
+  /**
+   * @return the slots a lookup of the userid compares, from the set's table
+   */
+  private static long probeLength(FollowSet set, long userid) {
+    long[] keys = set.getKeys();
+    int size = keys.length;
+    int hash = (int) userid & 0x7FFFFFFF;
+    // FastIDSet jumps back by a second hash, FastIDSet2 probes linearly
+    int index = set instanceof FastIDSet ? hash % size : (int) userid & size - 1;
+    int jump = set instanceof FastIDSet ? size - 1 - hash % (size - 2) : 1;
+    long length = 1;
+    while (keys[index] != userid && keys[index] != Long.MIN_VALUE) {
+      index = (index + jump) % size;
+      length++;
+    }
+    return length;
+  }
+}
@@ -1,9 +1,14 @@
 package thefeed;
 
 import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -189,6 +194,32 @@ public class ScanSpeedTest {
     System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
   }
 
+  @Test
+  public void testLinkedListLongMappedMemory() throws IOException {
+    LinkedLongMemory head = null;
+    LinkedLongMemory current = null;
+    for (int j = 0; j < BLOCKS; j++) {
+      File file = File.createTempFile("epoch", ".map");
+      file.deleteOnExit();
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      LongBuffer byteBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, TIMES / BLOCKS * BYTES_PER_ENTRY).asLongBuffer();
+      raf.close();
+      LinkedLongMemory tmp = current;
+      current = new LinkedLongMemory(byteBuffer, current);
+      current.next = tmp;
+      head = current;
+    }
+    long start = System.currentTimeMillis();
+    for (current = head; current != null; current = current.next) {
+      for (int i = 0; i < TIMES / BLOCKS; i++) {
+        current.value.get(i);
+        current.value.get(i + 1);
+      }
+    }
+    System.out.println("Linked List Long Mapped Memory");
+    System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
+  }
+
   @Test
   public void testCompareLinkedListLongDirectMemory() {
     Random r = new Random();
@@ -208,7 +239,7 @@ public class ScanSpeedTest {
         buffer.put(i, r.nextLong() % 100000);
       }
     }
-    while (true) {
+    for (int k = 0; k < 3; k++) {
       int hits = 0;
       long start = System.currentTimeMillis();
       for (current = head; current != null; current = current.next) {
@@ -254,7 +285,7 @@ public class ScanSpeedTest {
         buffer[i] = r.nextLong() % 100000;
       }
     }
-    while (true) {
+    for (int k = 0; k < 3; k++) {
       int hits = 0;
       long start = System.currentTimeMillis();
       for (current = head; current != null; current = current.next) {
@@ -270,6 +301,208 @@ public class ScanSpeedTest {
     }
   }
 
+  static class LinkedColumns {
+    long[] userids;
+    long[] postids;
+    LinkedColumns next;
+
+    public LinkedColumns(long[] userids, long[] postids, LinkedColumns next) {
+      this.userids = userids;
+      this.postids = postids;
+      this.next = next;
+    }
+  }
+
+  @Test
+  public void testCompareInterleavedVersusColumns() {
+    Random r = new Random();
+    FollowSet comparisons = new FastIDSet2(1000);
+    for (int i = 0; i < 1000; i++) {
+      comparisons.add(r.nextInt(100000));
+    }
+    LinkedLongArray interleaved = null;
+    LinkedColumns columns = null;
+    for (int j = 0; j < BLOCKS; j++) {
+      long[] buffer = new long[TIMES / BLOCKS * 2];
+      long[] userids = new long[TIMES / BLOCKS];
+      long[] postids = new long[TIMES / BLOCKS];
+      for (int i = 0; i < TIMES / BLOCKS; i++) {
+        long userid = r.nextInt(100000);
+        buffer[i * 2] = userid;
+        buffer[i * 2 + 1] = i;
+        userids[i] = userid;
+        postids[i] = i;
+      }
+      interleaved = new LinkedLongArray(buffer, interleaved);
+      columns = new LinkedColumns(userids, postids, columns);
+    }
+    for (int k = 0; k < 3; k++) {
+      {
+        long sum = 0;
+        long start = System.currentTimeMillis();
+        for (LinkedLongArray current = interleaved; current != null; current = current.next) {
+          long[] value = current.value;
+          for (int i = 0; i < TIMES / BLOCKS * 2; i += 2) {
+            if (comparisons.contains(value[i])) {
+              sum += value[i + 1];
+            }
+          }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("Interleaved " + sum);
+        System.out.println(TIMES / elapsed + " per ms, " + (long) TIMES * 16 / elapsed / 1000 + " MB/s streamed");
+      }
+      {
+        long sum = 0;
+        long start = System.currentTimeMillis();
+        for (LinkedColumns current = columns; current != null; current = current.next) {
+          long[] userids = current.userids;
+          for (int i = 0; i < TIMES / BLOCKS; i++) {
+            if (comparisons.contains(userids[i])) {
+              sum += current.postids[i];
+            }
+          }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("Columns " + sum);
+        System.out.println(TIMES / elapsed + " per ms, " + (long) TIMES * 8 / elapsed / 1000 + " MB/s streamed");
+      }
+    }
+  }
+
+  @Test
+  public void testCompareFeedStoreColumns() {
+    compareFeedStore("Compare Feed Store Columns", ColumnarEpoch.ALLOCATOR);
+  }
+
+  @Test
+  public void testCompareFeedStoreLongArray() {
+    compareFeedStore("Compare Feed Store Long Array", LongArrayEpoch.ALLOCATOR);
+  }
+
+  @Test
+  public void testCompareFeedStoreLongDirectMemory() {
+    compareFeedStore("Compare Feed Store Long Direct Memory", LongBufferEpoch.DIRECT);
+  }
+
+  @Test
+  public void testCompareFeedStoreLongMappedMemory() throws IOException {
+    File dir = File.createTempFile("epochs", "");
+    dir.delete();
+    compareFeedStore("Compare Feed Store Long Mapped Memory", new EpochDirectory(dir));
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testContinuousIngestWithRetention() {
+    Random r = new Random();
+    FollowSet comparisons = new FastIDSet2(1000);
+    for (int i = 0; i < 1000; i++) {
+      comparisons.add(r.nextInt(100000));
+    }
+    // Only ever keep TIMES entries however many are appended
+    EpochPool pool = new EpochPool(LongArrayEpoch.ALLOCATOR);
+    FeedStore store = new FeedStore(pool, TIMES / BLOCKS, new EpochCountRetention(BLOCKS));
+    for (int round = 0; round < 4; round++) {
+      for (int i = 0; i < TIMES; i++) {
+        store.append(r.nextInt(100000), (long) round * TIMES + i);
+      }
+      System.gc();
+      long used = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+      long start = System.currentTimeMillis();
+      int hits = store.scan(comparisons, Integer.MAX_VALUE);
+      System.out.println("Continuous Ingest With Retention");
+      System.out.println(store.size() + " entries, " + used / 1024 / 1024 + " MB, " + pool.size() + " pooled, " + hits + " hits");
+      System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
+    }
+  }
+
+  @Test
+  public void testFollowSetDensity() {
+    Random r = new Random();
+    long[] userids = new long[TIMES];
+    for (int i = 0; i < TIMES; i++) {
+      userids[i] = r.nextInt(100000);
+    }
+    // Fraction of the 100000 userids followed
+    for (double density : new double[]{0.001, 0.01, 0.1, 0.5, 0.9}) {
+      int followees = (int) (density * 100000);
+      FollowSet[] sets = {new FastIDSet2(followees), new BlockedHashSet(followees), new PerfectHashSet(followees),
+              new BitmapSet()};
+      while (sets[0].size() < followees) {
+        long userid = r.nextInt(100000);
+        for (FollowSet set : sets) {
+          set.add(userid);
+        }
+      }
+      for (FollowSet set : sets) {
+        long start = System.currentTimeMillis();
+        int hits = 0;
+        for (long userid : userids) {
+          if (set.contains(userid)) {
+            hits++;
+          }
+        }
+        System.out.println("Follow Set Density " + density + " " + set.getClass().getSimpleName() + " " + hits);
+        System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
+      }
+    }
+  }
+
+  @Test
+  public void testBranchFreeProbing() {
+    Random r = new Random();
+    for (int followees : new int[]{1000, 100000}) {
+      FollowSet[] sets = {new FastIDSet2(followees), new RobinHoodSet(followees)};
+      long[] userids = new long[followees];
+      for (int i = 0; i < followees; i++) {
+        userids[i] = r.nextInt(Integer.MAX_VALUE);
+        for (FollowSet set : sets) {
+          set.add(userids[i]);
+        }
+      }
+      for (double ratio : new double[]{0.01, 0.1, 0.5, 0.9}) {
+        long[] probes = new long[TIMES];
+        for (int i = 0; i < TIMES; i++) {
+          probes[i] = r.nextDouble() < ratio ? userids[r.nextInt(followees)] : r.nextInt(Integer.MAX_VALUE);
+        }
+        for (FollowSet set : sets) {
+          long start = System.currentTimeMillis();
+          int hits = 0;
+          for (long probe : probes) {
+            if (set.contains(probe)) {
+              hits++;
+            }
+          }
+          System.out.println("Branch Free Probing " + followees + " " + ratio + " " + set.getClass().getSimpleName() + " " + hits);
+          System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
+        }
+      }
+    }
+  }
+
+  private void compareFeedStore(String name, EpochAllocator allocator) {
+    Random r = new Random();
+    FollowSet comparisons = new FastIDSet2(1000);
+    for (int i = 0; i < 1000; i++) {
+      comparisons.add(r.nextInt(100000));
+    }
+    FeedStore store = new FeedStore(allocator, TIMES / BLOCKS);
+    for (int i = 0; i < TIMES; i++) {
+      store.append(r.nextInt(100000), i);
+    }
+    for (int i = 0; i < 3; i++) {
+      long start = System.currentTimeMillis();
+      int hits = store.scan(comparisons, Integer.MAX_VALUE);
+      System.out.println(name);
+      System.out.println(hits);
+      System.out.println(TIMES / (System.currentTimeMillis() - start) + " per ms");
+    }
+  }
+
   @Test
   public void testConcurrentCompareLinkedListLongDirectMemory() throws InterruptedException, ExecutionException {
     Random r = new Random();
@@ -290,29 +523,31 @@ public class ScanSpeedTest {
       }
     }
     ExecutorService es = Executors.newCachedThreadPool();
-    List<Callable<Void>> runs = new ArrayList<Callable<Void>>();
+    List<Callable<Integer>> runs = new ArrayList<Callable<Integer>>();
     final LinkedLongMemory finalHead = head;
     int cpus = Runtime.getRuntime().availableProcessors();
-    final AtomicInteger hits = new AtomicInteger(0);
     for (int i = 0; i < cpus; i++) {
-      runs.add(new Callable<Void>() {
+      runs.add(new Callable<Integer>() {
         @Override
-        public Void call() {
+        public Integer call() {
+          // Count locally and merge at the end rather than sharing a counter between cores
+          int hits = 0;
           for (LinkedLongMemory current = finalHead; current != null; current = current.next) {
             for (int i = 0; i < TIMES / BLOCKS * 2; i += 2) {
               if (comparisons.contains(current.value.get(i))) {
                 current.value.get(i + 1);
-                hits.incrementAndGet();
+                hits++;
               }
             }
           }
-          return null;
+          return hits;
         }
       });
     }
     long start = System.currentTimeMillis();
-    for (Future<Void> run : es.invokeAll(runs)) {
-      run.get();
+    int hits = 0;
+    for (Future<Integer> run : es.invokeAll(runs)) {
+      hits += run.get();
     }
     System.out.println(hits);
     System.out.println(cpus * TIMES / (System.currentTimeMillis() - start) + " per ms");
@@ -0,0 +1,104 @@
+package thefeed;
+
+import org.junit.Test;
+import thefeed.mahout.FastIDSet2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check coalesced requests get the same timelines as scanning for each alone.
+ */
+public class SharedScanSchedulerTest {
+
+  /**
+   * Queues the scans for the test to run itself.
+   */
+  private static class Scans implements Executor {
+    final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+
+    @Override
+    public void execute(Runnable scan) {
+      queue.add(scan);
+    }
+
+    void runNext() throws InterruptedException {
+      Runnable scan = queue.poll(10, TimeUnit.SECONDS);
+      assertTrue(scan != null);
+      scan.run();
+    }
+  }
+
+  @Test
+  public void testSharedScanScheduler() throws Exception {
+    Random r = new Random(24);
+    FeedStore store = new FeedStore(LongArrayEpoch.ALLOCATOR, 1000);
+    for (int i = 0; i < 20000; i++) {
+      store.append(r.nextInt(5000), i);
+    }
+    Scans scans = new Scans();
+    // One slot and no window, so a group only grows while the scan before it holds the slot
+    SharedScanScheduler scheduler = new SharedScanScheduler(store, scans, 1, 0, TimeUnit.MILLISECONDS, 64);
+    FollowSet[] follows = new FollowSet[40];
+    for (int k = 0; k < follows.length; k++) {
+      follows[k] = new FastIDSet2(10);
+      for (long userid : range(r, 50, 5000)) {
+        follows[k].add(userid);
+      }
+    }
+    List<Future<long[]>> timelines = new ArrayList<Future<long[]>>();
+    timelines.add(scheduler.submit(follows[0], 5));
+    // The first group is handed to the executor alone
+    Runnable first = scans.queue.poll(10, TimeUnit.SECONDS);
+    assertTrue(first != null);
+    for (int k = 1; k < follows.length; k++) {
+      timelines.add(scheduler.submit(follows[k], 5 + k));
+    }
+    // Everything else waits for the slot and is scanned together
+    first.run();
+    scans.runNext();
+    for (int k = 0; k < follows.length; k++) {
+      assertArrayEquals(store.timeline(follows[k], 5 + k), timelines.get(k).get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(2, scheduler.batches());
+    assertTrue(scans.queue.isEmpty());
+
+    // A scan that throws, even an Error, fails its whole group
+    FollowSet broken = new SortedArraySet(new long[]{1, 2, 3}) {
+      @Override
+      public long[] toArray() {
+        throw new AssertionError("Broken");
+      }
+    };
+    Future<long[]> failed = scheduler.submit(broken, 10);
+    scans.runNext();
+    try {
+      failed.get(10, TimeUnit.SECONDS);
+      fail("Scan didn't fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof AssertionError);
+    }
+    assertEquals(2, scheduler.batches());
+
+    scheduler.close();
+    try {
+      scheduler.submit(follows[0], 10);
+      fail("Submitted after close");
+    } catch (IllegalStateException e) {
+      // Closed
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package thefeed;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static thefeed.FollowSets.range;
+
+/**
+ * Check the batch lookups of the sorted array set against contains.
+ */
+public class SortedArraySetTest {
+
+  @Test
+  public void testContainsAll() {
+    Random r = new Random(15);
+    for (int size : new int[]{0, 1, 10, 1000}) {
+      SortedArraySet set = new SortedArraySet(range(r, size, 5000));
+      for (boolean sorted : new boolean[]{true, false}) {
+        long[] batch = range(r, 3000, 6000);
+        if (sorted) {
+          Arrays.sort(batch);
+        }
+        BitSet out = new BitSet();
+        int found = set.containsAll(batch, batch.length - 1, out);
+        int expected = 0;
+        for (int i = 0; i < batch.length - 1; i++) {
+          assertEquals(set.contains(batch[i]), out.get(i));
+          expected += set.contains(batch[i]) ? 1 : 0;
+        }
+        assertFalse(out.get(batch.length - 1));
+        assertEquals(expected, found);
+      }
+      for (int length : new int[]{0, 5, 100, 10000}) {
+        long[] batch = new SortedArraySet(range(r, length, 5000)).toArray();
+        BitSet out = new BitSet();
+        int found = set.intersect(batch, batch.length, out);
+        assertEquals(out.cardinality(), found);
+        for (int i = 0; i < batch.length; i++) {
+          assertEquals(set.contains(batch[i]), out.get(i));
+        }
+      }
+    }
+  }
+}
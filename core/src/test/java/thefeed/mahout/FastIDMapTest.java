@@ -0,0 +1,82 @@
+package thefeed.mahout;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the primitive maps against a boxed HashMap through growth, removal and rehashing.
+ */
+public class FastIDMapTest {
+
+  @Test
+  public void testLongMapMatchesHashMap() {
+    Random r = new Random(1);
+    FastIDLongMap map = new FastIDLongMap(4, -1);
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+    for (int i = 0; i < 100000; i++) {
+      long key = r.nextInt(5000) - 2500;
+      if (r.nextInt(4) == 0) {
+        Long removed = expected.remove(key);
+        assertEquals(removed == null ? -1 : removed, map.remove(key));
+      } else {
+        Long previous = expected.put(key, (long) i);
+        assertEquals(previous == null ? -1 : previous, map.put(key, i));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected.size(), map.keys().length);
+    for (long key = -3000; key < 3000; key++) {
+      Long value = expected.get(key);
+      assertEquals(value != null, map.containsKey(key));
+      assertEquals(value == null ? -1 : value, map.get(key));
+    }
+    assertFalse(map.containsKey(Long.MIN_VALUE));
+    assertEquals(-1, map.get(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testIncrement() {
+    FastIDLongMap map = new FastIDLongMap(0);
+    for (int i = 0; i < 1000; i++) {
+      map.increment(i % 10, 1);
+    }
+    assertEquals(10, map.size());
+    assertEquals(100, map.get(3));
+    assertEquals(0, map.get(10));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.get(3));
+  }
+
+  @Test
+  public void testObjectMapMatchesHashMap() {
+    Random r = new Random(2);
+    FastIDMap<String> map = new FastIDMap<String>();
+    Map<Long, String> expected = new HashMap<Long, String>();
+    for (int i = 0; i < 100000; i++) {
+      long key = r.nextLong() % 3000;
+      if (r.nextInt(4) == 0) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        String value = String.valueOf(i);
+        assertEquals(expected.put(key, value), map.put(key, value));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (long key : map.keys()) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+    for (long key = -3000; key < 3000; key++) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+    assertNull(map.get(Long.MIN_VALUE));
+  }
+}
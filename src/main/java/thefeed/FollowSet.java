@@ -1,19 +0,0 @@
-package thefeed;
-
-/**
- * TODO: Edit this
- * <p/>
- * User: sam
- * Date: 6/19/11
- * Time: 11:59 AM
- */
-public interface FollowSet {
-  boolean add(long l);
-
-  boolean contains(long l);
-
-  void report();
-
-  long[] getKeys();
-
-}